@@ -0,0 +1,93 @@
+package GraphViz;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Graph sources over primitive arrays.
+ */
+final class ArrayGraphSources {
+
+	private ArrayGraphSources() {
+	}
+
+	static final class Adjacency implements GraphSource {
+		private final int[][] adjacency;
+		private final boolean directed;
+
+		Adjacency(int[][] adjacency, boolean directed) {
+			this.adjacency = adjacency;
+			this.directed = directed;
+		}
+
+		@Override
+		public int vertexCount() {
+			return adjacency.length;
+		}
+
+		@Override
+		public boolean isDirected() {
+			return directed;
+		}
+
+		@Override
+		public void forEachNeighbor(int v, IntConsumer action) {
+			for(int w : adjacency[v]) {
+				action.accept(w);
+			}
+		}
+
+		@Override
+		public void forEachEdge(int v, EdgeConsumer action) {
+			for(int w : adjacency[v]) {
+				action.accept(v, w, 1.0);
+			}
+		}
+	}
+
+	static final class Csr implements GraphSource {
+		private final int[] offsets;
+		private final int[] targets;
+		private final double[] weights;
+		private final boolean directed;
+
+		Csr(int[] offsets, int[] targets, double[] weights, boolean directed) {
+			if(offsets.length == 0 || offsets[offsets.length - 1] > targets.length
+					|| (weights != null && weights.length < targets.length)) {
+				throw new IllegalArgumentException();
+			}
+			this.offsets = offsets;
+			this.targets = targets;
+			this.weights = weights;
+			this.directed = directed;
+		}
+
+		@Override
+		public int vertexCount() {
+			return offsets.length - 1;
+		}
+
+		@Override
+		public boolean isDirected() {
+			return directed;
+		}
+
+		@Override
+		public boolean isWeighted() {
+			return weights != null;
+		}
+
+		@Override
+		public void forEachNeighbor(int v, IntConsumer action) {
+			for(int i = offsets[v], end = offsets[v + 1]; i < end; i++) {
+				action.accept(targets[i]);
+			}
+		}
+
+		@Override
+		public void forEachEdge(int v, EdgeConsumer action) {
+			for(int i = offsets[v], end = offsets[v + 1]; i < end; i++) {
+				action.accept(v, targets[i], weights != null ? weights[i] : 1.0);
+			}
+		}
+	}
+}
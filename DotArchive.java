@@ -0,0 +1,322 @@
+package GraphViz;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Many dots kept in few compressed files. Every dot is separate gzip member
+ * appended to current part file, name-0.dot.gz, name-1.dot.gz..., and new
+ * part is started when current one grows over maximum size. Concatenated
+ * gzip members are valid gzip file, so gunzip of part gives all its dots.
+ * Index file name.idx has one line per dot with its part, offset and
+ * length, so any dot can be read without decompressing others.
+ * When same entry name is appended again, index points to newest dot.
+ */
+public class DotArchive implements Closeable {
+	private static final String PART_SUFFIX = ".dot.gz";
+	private static final String INDEX_SUFFIX = ".idx";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Path directory;
+	private final String name;
+	private final long maxPartBytes;
+	private final Map<String, Entry> index = new LinkedHashMap<>();
+	private int part;
+	private FileChannel out;
+	private FileChannel indexOut;
+
+	/**
+	 * Opens archive in directory, index and parts written before are kept.
+	 * @param directory
+	 * @param name of part and index files
+	 * @param maxPartBytes size after which new part is started
+	 * @throws IOException
+	 */
+	public DotArchive(Path directory, String name, long maxPartBytes) throws IOException {
+		if(maxPartBytes <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.directory = directory;
+		this.name = name;
+		this.maxPartBytes = maxPartBytes;
+		Files.createDirectories(directory);
+		Path indexFile = directory.resolve(name+INDEX_SUFFIX);
+		if(Files.exists(indexFile)) {
+			loadIndex(indexFile);
+		}
+		indexOut = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+		out = openPart(part);
+	}
+
+	/**
+	 * Writes dot written by content as new gzip member of current part.
+	 * @param entry name of dot, without tabs and line breaks
+	 * @param content
+	 * @return size of dot before compression
+	 * @throws IOException
+	 */
+	public synchronized long append(String entry, Content content) throws IOException {
+		if(entry.indexOf('\t') >= 0 || entry.indexOf('\n') >= 0 || entry.indexOf('\r') >= 0) {
+			throw new IllegalArgumentException("Entry name can't have tabs or line breaks: "+entry);
+		}
+		if(out == null) {
+			throw new IOException("Archive "+name+" is closed");
+		}
+		if(out.size() >= maxPartBytes) {
+			out.close();
+			out = openPart(++part);
+		}
+
+		long offset = out.size();
+		out.position(offset);
+		long raw;
+		Gzip gz = new Gzip(Channels.newOutputStream(out));
+		try {
+			raw = gz.write(content);
+		} catch (IOException | RuntimeException e) {
+			//dot that was partly written is dropped
+			out.truncate(offset);
+			throw e;
+		} finally {
+			gz.end();
+		}
+
+		Entry e = new Entry(part, offset, out.size() - offset, raw);
+		String line = entry+"\t"+e.part+"\t"+e.offset+"\t"+e.length+"\t"+e.raw+"\n";
+		ByteBuffer bytes = StandardCharsets.UTF_8.encode(line);
+		while(bytes.hasRemaining()) {
+			indexOut.write(bytes);
+		}
+		index.remove(entry);
+		index.put(entry, e);
+		return raw;
+	}
+
+	public long append(String entry, String dot) throws IOException {
+		return append(entry, channel -> channel.write(StandardCharsets.UTF_8.encode(dot)));
+	}
+
+	/**
+	 * Opens dot for reading, stream decompresses only that dot.
+	 * @param entry
+	 * @return uncompressed dot
+	 * @throws IOException if there is no such entry
+	 */
+	public InputStream open(String entry) throws IOException {
+		Entry e;
+		synchronized (this) {
+			e = index.get(entry);
+		}
+		if(e == null) {
+			throw new IOException("No dot "+entry+" in archive "+name);
+		}
+		FileChannel channel = FileChannel.open(partFile(e.part), StandardOpenOption.READ);
+		try {
+			return new GZIPInputStream(new Slice(channel, e.offset, e.length), BUFFER_SIZE);
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	public String read(String entry) throws IOException {
+		try (InputStream in = open(entry)) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	public synchronized boolean contains(String entry) {
+		return index.containsKey(entry);
+	}
+
+	/**
+	 * @return names of dots, in order they were first appended
+	 */
+	public synchronized Set<String> entries() {
+		return new LinkedHashSet<>(index.keySet());
+	}
+
+	/**
+	 * Location of dot shown to user, part file and entry name.
+	 * @param entry
+	 * @return location
+	 */
+	public synchronized String location(String entry) {
+		Entry e = index.get(entry);
+		return partFile(e != null ? e.part : part)+"#"+entry;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if(out != null) {
+			try {
+				out.close();
+			} finally {
+				indexOut.close();
+				out = null;
+			}
+		}
+	}
+
+	private void loadIndex(Path indexFile) throws IOException {
+		List<String> lines = Files.readAllLines(indexFile, StandardCharsets.UTF_8);
+		for(String line : lines) {
+			String[] f = line.split("\t");
+			if(f.length != 5) {
+				//line cut short by crash while it was written
+				continue;
+			}
+			Entry e = new Entry(Integer.parseInt(f[1]), Long.parseLong(f[2]), Long.parseLong(f[3]), Long.parseLong(f[4]));
+			index.remove(f[0]);
+			index.put(f[0], e);
+			part = Math.max(part, e.part);
+		}
+	}
+
+	private FileChannel openPart(int p) throws IOException {
+		return FileChannel.open(partFile(p), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+	}
+
+	private Path partFile(int p) {
+		return directory.resolve(name+"-"+p+PART_SUFFIX);
+	}
+
+	/**
+	 * Writes dot into channel.
+	 */
+	@FunctionalInterface
+	public interface Content {
+		void writeTo(WritableByteChannel channel) throws IOException;
+	}
+
+	private static final class Entry {
+		final int part;
+		final long offset;
+		final long length;
+		final long raw;
+
+		Entry(int part, long offset, long length, long raw) {
+			this.part = part;
+			this.offset = offset;
+			this.length = length;
+			this.raw = raw;
+		}
+	}
+
+	/**
+	 * Gzip stream that compresses with fastest level, dot compresses well
+	 * even then and compression is on path of every render.
+	 * Underlying stream is not closed.
+	 */
+	static final class Gzip extends GZIPOutputStream {
+		Gzip(OutputStream out) throws IOException {
+			super(out, BUFFER_SIZE);
+			def.setLevel(Deflater.BEST_SPEED);
+		}
+
+		/**
+		 * Compresses dot written by content and finishes gzip member.
+		 * @param content
+		 * @return size of dot before compression
+		 * @throws IOException
+		 */
+		long write(Content content) throws IOException {
+			WritableByteChannel channel = Channels.newChannel(this);
+			long[] raw = {0};
+			try {
+				content.writeTo(new WritableByteChannel() {
+					@Override
+					public int write(ByteBuffer src) throws IOException {
+						int n = channel.write(src);
+						raw[0] += n;
+						return n;
+					}
+
+					@Override
+					public boolean isOpen() {
+						return true;
+					}
+
+					@Override
+					public void close() {
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			finish();
+			flush();
+			return raw[0];
+		}
+
+		/**
+		 * Frees memory of compressor.
+		 */
+		void end() {
+			def.end();
+		}
+	}
+
+	/**
+	 * Part of file read by positional reads, closing it closes channel.
+	 */
+	private static final class Slice extends InputStream {
+		private final FileChannel channel;
+		private long position;
+		private final long end;
+
+		Slice(FileChannel channel, long offset, long length) {
+			this.channel = channel;
+			this.position = offset;
+			this.end = offset + length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(position >= end) {
+				return -1;
+			}
+			int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+			if(n > 0) {
+				position += n;
+			}
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(Integer.MAX_VALUE, end - position);
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+}
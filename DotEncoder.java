@@ -0,0 +1,441 @@
+package GraphViz;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+/**
+ * Writes edge lines of dot as ASCII bytes into reusable buffer, which is
+ * flushed to channel or Appendable when it fills up, or grows when encoder
+ * has no destination. Vertices and weights are formatted without creating
+ * any objects, so writing edge produces no garbage.
+ * Weights are written in shortest form that gives back same double, which
+ * is what Double.toString gives for weights between 0.001 and 10^7, or
+ * rounded to weight precision with trailing zeros removed.
+ * Encoders are kept per thread, acquire and release them with
+ * acquire(...) and release().
+ */
+final class DotEncoder implements GraphSource.EdgeConsumer {
+	static final int BUFFER_SIZE = 64 * 1024;
+	static final int MAX_PRECISION = 15;
+	/** longest edge line, two ints, glue and weight formatted by Double.toString */
+	private static final int MAX_EDGE_BYTES = 128;
+	private static final int RANGE_BUFFER_SIZE = 8 * 1024;
+	private static final int CACHED_VERTICES = 10000;
+	private static final long MAX_EXACT = 999_999_999_999_999L;
+
+	private static final byte[] SPACING = ascii("    ");
+	private static final byte[] DIRECTED = ascii(" -> ");
+	private static final byte[] UNDIRECTED = ascii(" -- ");
+	private static final byte[] LABEL = ascii("[label=");
+	private static final byte[] EDGE_END = ascii(";\n");
+	private static final byte[] ZERO_WEIGHT = ascii("0.0");
+	/** digits of 0 to 9999, four bytes for each number, padded with leading zeros */
+	private static final byte[] DIGITS = new byte[CACHED_VERTICES * 4];
+	private static final double[] POW10 = new double[MAX_PRECISION + 1];
+
+	static {
+		for(int i = 0; i < CACHED_VERTICES; i++) {
+			DIGITS[4 * i] = (byte) ('0' + i / 1000);
+			DIGITS[4 * i + 1] = (byte) ('0' + i / 100 % 10);
+			DIGITS[4 * i + 2] = (byte) ('0' + i / 10 % 10);
+			DIGITS[4 * i + 3] = (byte) ('0' + i % 10);
+		}
+		double p = 1;
+		for(int i = 0; i <= MAX_PRECISION; i++) {
+			POW10[i] = p;
+			p *= 10;
+		}
+	}
+
+	private static final ThreadLocal<DotEncoder> CACHED = ThreadLocal.withInitial(() -> new DotEncoder(BUFFER_SIZE));
+
+	private ByteBuffer buffer;
+	private byte[] buf;
+	private int pos;
+	private WritableByteChannel channel;
+	private Appendable appendable;
+	private final AsciiView view = new AsciiView();
+	private boolean inUse;
+
+	private byte[] glue = DIRECTED;
+	private boolean weighted;
+	private int precision = -1;
+	//weights are counts, written with precision 0
+	private boolean countWeights;
+	long edges;
+	int maxVertex = -1;
+	/** vertices of graph whose edges were written, -1 until they are counted */
+	int vertices = -1;
+	/** ends of written edges, recorded only when it is set */
+	BitSet drawn;
+	/** components joined by written edges and their kept edges, only when it is set, not used by ranges */
+	GraphComponents components;
+
+	private DotEncoder(int capacity) {
+		buffer = ByteBuffer.allocate(capacity);
+		buf = buffer.array();
+	}
+
+	/**
+	 * Encoder of current thread that writes to channel, new encoder is
+	 * created if encoder of thread is already in use.
+	 * @param channel
+	 * @param precision of weights, -1 for shortest form
+	 * @return encoder
+	 */
+	static DotEncoder acquire(WritableByteChannel channel, int precision) {
+		DotEncoder e = acquire(precision);
+		e.channel = channel;
+		return e;
+	}
+
+	static DotEncoder acquire(Appendable appendable, int precision) {
+		DotEncoder e = acquire(precision);
+		e.appendable = appendable;
+		return e;
+	}
+
+	private static DotEncoder acquire(int precision) {
+		DotEncoder e = CACHED.get();
+		if(e.inUse) {
+			e = new DotEncoder(BUFFER_SIZE);
+		}
+		e.inUse = true;
+		e.precision = precision;
+		return e;
+	}
+
+	/**
+	 * Encoder without destination, its buffer grows as edges are written.
+	 * Used for ranges of vertices written in parallel.
+	 * @param parent whose precision is used
+	 * @return encoder
+	 */
+	static DotEncoder forRange(DotEncoder parent) {
+		DotEncoder e = new DotEncoder(RANGE_BUFFER_SIZE);
+		e.precision = parent.precision;
+		e.glue = parent.glue;
+		e.weighted = parent.weighted;
+		e.countWeights = parent.countWeights;
+		if(parent.drawn != null) {
+			e.drawn = new BitSet();
+		}
+		return e;
+	}
+
+	/**
+	 * Drops destination, encoder can be acquired again. Buffer should be
+	 * flushed first.
+	 */
+	void release() {
+		channel = null;
+		appendable = null;
+		drawn = null;
+		components = null;
+		pos = 0;
+		inUse = false;
+	}
+
+	/**
+	 * Prepares encoder for edges of source.
+	 * @param source
+	 */
+	void begin(GraphSource source) {
+		glue = source.isDirected() ? DIRECTED : UNDIRECTED;
+		weighted = source.isWeighted();
+		countWeights = source.hasCountWeights();
+		edges = 0;
+		maxVertex = -1;
+		vertices = -1;
+		if(components != null) {
+			components.begin(source);
+		}
+	}
+
+	@Override
+	public void accept(int v, int w, double wt) {
+		if(pos + MAX_EDGE_BYTES > buf.length) {
+			makeRoom(MAX_EDGE_BYTES);
+		}
+		put(SPACING);
+		writeInt(v);
+		put(glue);
+		writeInt(w);
+		if(weighted) {
+			put(LABEL);
+			writeWeight(wt);
+			buf[pos++] = ']';
+		}
+		put(EDGE_END);
+		edges++;
+		maxVertex = Math.max(maxVertex, Math.max(v, w));
+		if(drawn != null) {
+			drawn.set(v);
+			drawn.set(w);
+		}
+		if(components != null) {
+			components.union(v, w, wt);
+		}
+	}
+
+	/**
+	 * Writes string that has only ASCII characters.
+	 * @param s
+	 */
+	void writeAscii(String s) {
+		int length = s.length();
+		for(int i = 0; i < length; ) {
+			if(pos == buf.length) {
+				makeRoom(1);
+			}
+			int n = Math.min(length - i, buf.length - pos);
+			for(int end = i + n; i < end; i++) {
+				buf[pos++] = (byte) s.charAt(i);
+			}
+		}
+	}
+
+	/**
+	 * Writes bytes written to range encoder and adds its counts.
+	 * @param range
+	 */
+	void append(DotEncoder range) {
+		for(int i = 0; i < range.pos; ) {
+			if(pos == buf.length) {
+				makeRoom(1);
+			}
+			int n = Math.min(range.pos - i, buf.length - pos);
+			System.arraycopy(range.buf, i, buf, pos, n);
+			pos += n;
+			i += n;
+		}
+		edges += range.edges;
+		maxVertex = Math.max(maxVertex, range.maxVertex);
+		if(drawn != null && range.drawn != null) {
+			drawn.or(range.drawn);
+		}
+	}
+
+	/**
+	 * Writes buffered bytes to destination.
+	 * @throws IOException
+	 */
+	void flush() throws IOException {
+		if(channel != null) {
+			buffer.clear().limit(pos);
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			pos = 0;
+		} else if(appendable != null) {
+			appendable.append(view, 0, pos);
+			pos = 0;
+		}
+	}
+
+	private void makeRoom(int n) {
+		if(channel == null && appendable == null) {
+			byte[] bigger = new byte[Math.max(buf.length * 2, pos + n)];
+			System.arraycopy(buf, 0, bigger, 0, pos);
+			buffer = ByteBuffer.wrap(bigger);
+			buf = bigger;
+			return;
+		}
+		try {
+			flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void put(byte[] bytes) {
+		System.arraycopy(bytes, 0, buf, pos, bytes.length);
+		pos += bytes.length;
+	}
+
+	private void writeInt(int v) {
+		if(v >= 0 && v < CACHED_VERTICES) {
+			int length = v < 10 ? 1 : v < 100 ? 2 : v < 1000 ? 3 : 4;
+			System.arraycopy(DIGITS, 4 * v + 4 - length, buf, pos, length);
+			pos += length;
+		} else {
+			writeLong(v);
+		}
+	}
+
+	/**
+	 * Writes digits in groups of four taken from table of digits.
+	 * @param v
+	 */
+	private void writeLong(long v) {
+		if(v < 0) {
+			if(v == Long.MIN_VALUE) {
+				writeAscii(Long.toString(v));
+				return;
+			}
+			buf[pos++] = '-';
+			v = -v;
+		}
+		int end = pos + digits(v);
+		int p = end;
+		while(v >= CACHED_VERTICES) {
+			int group = (int) (v % CACHED_VERTICES);
+			v /= CACHED_VERTICES;
+			p -= 4;
+			System.arraycopy(DIGITS, 4 * group, buf, p, 4);
+		}
+		int lead = (int) v;
+		int length = p - pos;
+		System.arraycopy(DIGITS, 4 * lead + 4 - length, buf, pos, length);
+		pos = end;
+	}
+
+	private static int digits(long v) {
+		int n = 1;
+		while(v >= 10) {
+			v /= 10;
+			n++;
+		}
+		return n;
+	}
+
+	private void writeWeight(double wt) {
+		if(countWeights) {
+			writeRounded(wt, 0);
+		} else if(precision >= 0) {
+			writeRounded(wt, precision);
+		} else {
+			writeShortest(wt);
+		}
+	}
+
+	/**
+	 * Finds fewest fraction digits that give back same double, for weights
+	 * that Double.toString writes without exponent. Other weights are
+	 * written by Double.toString.
+	 * @param wt
+	 */
+	private void writeShortest(double wt) {
+		if(Double.doubleToRawLongBits(wt) == 0) {
+			put(ZERO_WEIGHT);
+			return;
+		}
+		double abs = Math.abs(wt);
+		if(abs >= 1e-3 && abs < 1e7) {
+			for(int k = 0; k <= MAX_PRECISION; k++) {
+				double scaled = abs * POW10[k];
+				if(scaled > MAX_EXACT) {
+					break;
+				}
+				double m = Math.rint(scaled);
+				if(m / POW10[k] == abs) {
+					if(wt < 0) {
+						buf[pos++] = '-';
+					}
+					writeFixed((long) m, k, true);
+					return;
+				}
+			}
+		}
+		writeAscii(Double.toString(wt));
+	}
+
+	/**
+	 * Rounds weight to precision digits and drops trailing zeros,
+	 * 2.50 is written as 2.5 and 3.00 as 3.
+	 * @param wt
+	 * @param precision digits after decimal point
+	 */
+	private void writeRounded(double wt, int precision) {
+		double scaled = Math.abs(wt) * POW10[precision];
+		if(!(scaled <= MAX_EXACT)) {
+			writeAscii(Double.toString(wt));
+			return;
+		}
+		long m = Math.round(scaled);
+		int k = precision;
+		while(k > 0 && m % 10 == 0) {
+			m /= 10;
+			k--;
+		}
+		if(wt < 0 && m != 0) {
+			buf[pos++] = '-';
+		}
+		writeFixed(m, k, false);
+	}
+
+	/**
+	 * Writes m / 10^fraction, digits of fraction are padded with zeros.
+	 * @param m
+	 * @param fraction number of digits after decimal point
+	 * @param pointZero if true whole numbers are written with .0
+	 */
+	private void writeFixed(long m, int fraction, boolean pointZero) {
+		if(fraction == 0) {
+			writeLong(m);
+			if(pointZero) {
+				buf[pos++] = '.';
+				buf[pos++] = '0';
+			}
+			return;
+		}
+		long scale = (long) POW10[fraction];
+		writeLong(m / scale);
+		buf[pos++] = '.';
+		long rest = m % scale;
+		for(int zeros = fraction - digits(rest); zeros > 0; zeros--) {
+			buf[pos++] = '0';
+		}
+		writeLong(rest);
+	}
+
+	/**
+	 * Weight as it is written to dot with given precision.
+	 * @param wt
+	 * @param precision -1 for Double.toString
+	 * @return weight
+	 */
+	static String formatWeight(double wt, int precision) {
+		if(precision < 0) {
+			return Double.toString(wt);
+		}
+		DotEncoder e = new DotEncoder(32);
+		e.precision = precision;
+		e.writeRounded(wt, precision);
+		return new String(e.buf, 0, e.pos, StandardCharsets.US_ASCII);
+	}
+
+	private static byte[] ascii(String s) {
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Buffer seen as characters, so it can be appended to Appendable
+	 * without copying it to string first.
+	 */
+	private final class AsciiView implements CharSequence {
+		@Override
+		public int length() {
+			return pos;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return (char) (buf[index] & 0xff);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new String(buf, start, end - start, StandardCharsets.US_ASCII);
+		}
+
+		@Override
+		public String toString() {
+			return new String(buf, 0, pos, StandardCharsets.US_ASCII);
+		}
+	}
+}
@@ -0,0 +1,464 @@
+package GraphViz;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Vertices and edges read from dot, so dot files can be drawn without
+ * GraphViz. Only what is needed for drawing is kept: node names, edges
+ * and edge labels. Attributes other than edge label are skipped and
+ * subgraphs are flattened into graph.
+ */
+final class DotGraph {
+	final boolean directed;
+	final List<String> names;
+	final int[] from;
+	final int[] to;
+	/** label of each edge, null if no edge has label */
+	final String[] labels;
+
+	private DotGraph(boolean directed, List<String> names, int[] from, int[] to, String[] labels) {
+		this.directed = directed;
+		this.names = names;
+		this.from = from;
+		this.to = to;
+		this.labels = labels;
+	}
+
+	int vertexCount() {
+		return names.size();
+	}
+
+	int edgeCount() {
+		return from.length;
+	}
+
+	/**
+	 * Keeps at most maxEdges edges chosen uniformly at random, in their
+	 * original order, and only vertices of kept edges.
+	 * @param maxEdges
+	 * @param seed
+	 * @return reduced graph, this graph if it has no more than maxEdges edges
+	 */
+	DotGraph sample(int maxEdges, long seed) {
+		int m = edgeCount();
+		if(m <= maxEdges) {
+			return this;
+		}
+		int[] renumbered = new int[vertexCount()];
+		Arrays.fill(renumbered, -1);
+		List<String> kept = new ArrayList<>();
+		int[] f = new int[maxEdges];
+		int[] t = new int[maxEdges];
+		String[] l = labels != null ? new String[maxEdges] : null;
+		SplittableRandom random = new SplittableRandom(seed);
+		int k = 0;
+		for(int e = 0; e < m && k < maxEdges; e++) {
+			//edge is kept with probability of edges still needed among edges left
+			if(random.nextInt(m - e) < maxEdges - k) {
+				f[k] = keep(from[e], renumbered, kept);
+				t[k] = keep(to[e], renumbered, kept);
+				if(l != null) {
+					l[k] = labels[e];
+				}
+				k++;
+			}
+		}
+		return new DotGraph(directed, kept, f, t, l);
+	}
+
+	private int keep(int v, int[] renumbered, List<String> kept) {
+		if(renumbered[v] == -1) {
+			renumbered[v] = kept.size();
+			kept.add(names.get(v));
+		}
+		return renumbered[v];
+	}
+
+	/**
+	 * Writes graph as dot, vertices by their names and edges with their
+	 * labels. Other attributes of dot graph was read from are lost.
+	 * @param out
+	 * @throws IOException
+	 */
+	void writeTo(Appendable out) throws IOException {
+		out.append(directed ? "digraph {\n" : "graph {\n");
+		for(String name : names) {
+			out.append("    ").append(id(name)).append(";\n");
+		}
+		String glue = directed ? " -> " : " -- ";
+		for(int e = 0; e < edgeCount(); e++) {
+			out.append("    ").append(id(names.get(from[e]))).append(glue).append(id(names.get(to[e])));
+			if(labels != null && labels[e] != null) {
+				out.append(" [label=").append(id(labels[e])).append(']');
+			}
+			out.append(";\n");
+		}
+		out.append("}\n");
+	}
+
+	/**
+	 * Quotes id, html ids are kept as they are.
+	 */
+	private static String id(String s) {
+		if(s.startsWith("<") && s.endsWith(">")) {
+			return s;
+		}
+		return "\""+s.replace("\"", "\\\"")+"\"";
+	}
+
+	/**
+	 * Reads graph from dot.
+	 * @param in
+	 * @return graph
+	 * @throws IOException if dot can't be read or is not valid
+	 */
+	static DotGraph read(Reader in) throws IOException {
+		return new Parser(new Lexer(in)).parse();
+	}
+
+	private static final class Parser {
+		private final Lexer lexer;
+		private final Map<String, Integer> vertices = new HashMap<>();
+		private final List<String> names = new ArrayList<>();
+		private int[] from = new int[64];
+		private int[] to = new int[64];
+		private String[] labels;
+		private int edges;
+
+		Parser(Lexer lexer) {
+			this.lexer = lexer;
+		}
+
+		DotGraph parse() throws IOException {
+			String t = lexer.next();
+			if("strict".equalsIgnoreCase(t)) {
+				t = lexer.next();
+			}
+			boolean directed;
+			if("digraph".equalsIgnoreCase(t)) {
+				directed = true;
+			} else if("graph".equalsIgnoreCase(t)) {
+				directed = false;
+			} else {
+				throw new IOException("Dot should start with graph or digraph, not "+t);
+			}
+			t = lexer.next();
+			if(!"{".equals(t)) {
+				t = lexer.next();
+			}
+			if(!"{".equals(t)) {
+				throw new IOException("Expected { in dot");
+			}
+
+			int depth = 1;
+			t = lexer.next();
+			while(depth > 0) {
+				if(t == null) {
+					throw new IOException("Dot ends before closing }");
+				}
+				if("{".equals(t)) {
+					depth++;
+					t = lexer.next();
+				} else if("}".equals(t)) {
+					depth--;
+					t = depth > 0 ? lexer.next() : null;
+				} else if(";".equals(t) || ",".equals(t)) {
+					t = lexer.next();
+				} else if(lexer.quoted) {
+					t = statement(t);
+				} else if("subgraph".equalsIgnoreCase(t)) {
+					t = lexer.next();
+					if(!"{".equals(t)) {
+						t = lexer.next();
+					}
+				} else if(("node".equalsIgnoreCase(t) || "edge".equalsIgnoreCase(t) || "graph".equalsIgnoreCase(t))
+						&& "[".equals(lexer.peek())) {
+					lexer.next();
+					attributes();
+					t = lexer.next();
+				} else {
+					t = statement(t);
+				}
+			}
+
+			return new DotGraph(directed, names, Arrays.copyOf(from, edges), Arrays.copyOf(to, edges),
+					labels != null ? Arrays.copyOf(labels, edges) : null);
+		}
+
+		/**
+		 * Node, edge chain or graph attribute starting with id.
+		 * @param id
+		 * @return token after statement
+		 */
+		private String statement(String id) throws IOException {
+			String t = lexer.next();
+			if("=".equals(t)) {
+				//graph attribute
+				lexer.next();
+				return lexer.next();
+			}
+			t = port(t);
+			int v = vertex(id);
+			int first = edges;
+			while("->".equals(t) || "--".equals(t)) {
+				String next = lexer.next();
+				if(next == null || "{".equals(next)) {
+					throw new IOException("Edges to subgraphs are not supported");
+				}
+				int w = vertex(next);
+				addEdge(v, w);
+				v = w;
+				t = port(lexer.next());
+			}
+			if("[".equals(t)) {
+				String label = attributes();
+				if(label != null && edges > first) {
+					if(labels == null) {
+						labels = new String[from.length];
+					}
+					for(int e = first; e < edges; e++) {
+						labels[e] = label;
+					}
+				}
+				t = lexer.next();
+			}
+			return t;
+		}
+
+		/**
+		 * Skips port of node, a:p or a:p:c.
+		 * @param t token after node
+		 * @return token after port
+		 */
+		private String port(String t) throws IOException {
+			while(":".equals(t)) {
+				lexer.next();
+				t = lexer.next();
+			}
+			return t;
+		}
+
+		/**
+		 * Reads attributes up to ].
+		 * @return value of label, null if there is none
+		 */
+		private String attributes() throws IOException {
+			String label = null;
+			String t = lexer.next();
+			while(t != null && !"]".equals(t)) {
+				String key = t;
+				t = lexer.next();
+				if("=".equals(t)) {
+					String value = lexer.next();
+					if("label".equals(key)) {
+						label = value;
+					}
+					t = lexer.next();
+				}
+				if(";".equals(t) || ",".equals(t)) {
+					t = lexer.next();
+				}
+			}
+			if(t == null) {
+				throw new IOException("Dot ends before closing ]");
+			}
+			return label;
+		}
+
+		private int vertex(String name) {
+			Integer v = vertices.get(name);
+			if(v == null) {
+				v = names.size();
+				vertices.put(name, v);
+				names.add(name);
+			}
+			return v;
+		}
+
+		private void addEdge(int v, int w) {
+			if(edges == from.length) {
+				from = Arrays.copyOf(from, edges * 2);
+				to = Arrays.copyOf(to, edges * 2);
+				if(labels != null) {
+					labels = Arrays.copyOf(labels, edges * 2);
+				}
+			}
+			from[edges] = v;
+			to[edges] = w;
+			edges++;
+		}
+	}
+
+	/**
+	 * Splits dot in ids, quoted strings, edge operators and single
+	 * character punctuation, comments are skipped.
+	 */
+	private static final class Lexer {
+		private final Reader in;
+		private final StringBuilder sb = new StringBuilder();
+		private int c = -2;
+		private String peeked;
+		private boolean peekedQuoted;
+		/** whether last token returned by next was quoted string */
+		boolean quoted;
+
+		Lexer(Reader in) {
+			this.in = in;
+		}
+
+		String peek() throws IOException {
+			if(peeked == null) {
+				boolean current = quoted;
+				peeked = read();
+				peekedQuoted = quoted;
+				quoted = current;
+			}
+			return peeked;
+		}
+
+		String next() throws IOException {
+			if(peeked != null) {
+				String t = peeked;
+				quoted = peekedQuoted;
+				peeked = null;
+				return t;
+			}
+			return read();
+		}
+
+		private int ch() throws IOException {
+			if(c == -2) {
+				c = in.read();
+			}
+			return c;
+		}
+
+		private void advance() {
+			c = -2;
+		}
+
+		private String read() throws IOException {
+			quoted = false;
+			while(true) {
+				int x = ch();
+				if(x == -1) {
+					return null;
+				}
+				if(Character.isWhitespace(x)) {
+					advance();
+				} else if(x == '#') {
+					skipLine();
+				} else if(x == '/') {
+					advance();
+					int y = ch();
+					if(y == '/') {
+						skipLine();
+					} else if(y == '*') {
+						skipBlockComment();
+					} else {
+						return "/";
+					}
+				} else {
+					break;
+				}
+			}
+
+			int x = ch();
+			sb.setLength(0);
+			if(x == '"') {
+				advance();
+				quoted = true;
+				while((x = ch()) != '"') {
+					if(x == -1) {
+						throw new IOException("Dot ends inside quoted string");
+					}
+					advance();
+					if(x == '\\') {
+						int y = ch();
+						if(y == '"' || y == '\\') {
+							advance();
+							x = y;
+						} else if(y == '\n') {
+							advance();
+							continue;
+						}
+					}
+					sb.append((char) x);
+				}
+				advance();
+				return sb.toString();
+			}
+			if(x == '<') {
+				//html label, kept with its brackets
+				int depth = 0;
+				do {
+					x = ch();
+					if(x == -1) {
+						throw new IOException("Dot ends inside html label");
+					}
+					advance();
+					depth += x == '<' ? 1 : x == '>' ? -1 : 0;
+					sb.append((char) x);
+				} while(depth > 0);
+				quoted = true;
+				return sb.toString();
+			}
+			if(x == '-') {
+				advance();
+				int y = ch();
+				if(y == '>' || y == '-') {
+					advance();
+					return y == '>' ? "->" : "--";
+				}
+				sb.append('-');
+				readId();
+				return sb.toString();
+			}
+			if(isIdChar(x)) {
+				readId();
+				return sb.toString();
+			}
+			advance();
+			return String.valueOf((char) x);
+		}
+
+		private void readId() throws IOException {
+			int x;
+			while((x = ch()) != -1 && isIdChar(x)) {
+				sb.append((char) x);
+				advance();
+			}
+		}
+
+		private static boolean isIdChar(int x) {
+			return Character.isLetterOrDigit(x) || x == '_' || x == '.' || x >= 0x80;
+		}
+
+		private void skipLine() throws IOException {
+			int x;
+			while((x = ch()) != -1 && x != '\n') {
+				advance();
+			}
+		}
+
+		private void skipBlockComment() throws IOException {
+			advance();
+			int last = 0;
+			int x;
+			while((x = ch()) != -1) {
+				advance();
+				if(last == '*' && x == '/') {
+					return;
+				}
+				last = x;
+			}
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package GraphViz;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates graph dot ids. Ids are reserved from graph counter file in
+ * blocks while file is locked, so processes sharing counter file never
+ * get same id. Ids from reserved block are given out from memory without
+ * any I/O. Ids not used before JVM exits are given back when it shuts
+ * down, unless other process reserved ids after them, then they are
+ * skipped.
+ * Counter file holds last reserved id, same as when it was rewritten for
+ * every graph.
+ */
+final class DotIdAllocator {
+	private static final int BLOCK_SIZE = 64;
+	//file locks are held by JVM, so one allocator per counter file is shared
+	private static final Map<String, DotIdAllocator> ALLOCATORS = new ConcurrentHashMap<>();
+
+	private final File counter;
+	private volatile Block block = new Block(1, 0);
+
+	private DotIdAllocator(File counter) {
+		this.counter = counter;
+		Runtime.getRuntime().addShutdownHook(new Thread(this::release, "GraphViz-dot-ids"));
+	}
+
+	static DotIdAllocator forCounter(File counter) {
+		String key;
+		try {
+			key = counter.getCanonicalPath();
+		} catch (IOException e) {
+			key = counter.getAbsolutePath();
+		}
+		return ALLOCATORS.computeIfAbsent(key, k -> new DotIdAllocator(new File(k)));
+	}
+
+	/**
+	 * @return next id, no file is accessed unless reserved block is used up
+	 * @throws IOException if new block can't be reserved
+	 */
+	long allocate() throws IOException {
+		while(true) {
+			Block b = block;
+			long id = b.next.getAndIncrement();
+			if(id <= b.last) {
+				return id;
+			}
+			synchronized (this) {
+				if(block == b) {
+					block = reserve();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads last reserved id from counter file and writes it back
+	 * increased by block size while file is locked.
+	 * @return newly reserved block
+	 * @throws IOException
+	 */
+	private Block reserve() throws IOException {
+		counter.getParentFile().mkdirs();
+		try (FileChannel channel = FileChannel.open(counter.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			FileLock lock = channel.lock();
+			try {
+				long current = readCounter(channel);
+				long last = current + BLOCK_SIZE;
+				writeCounter(channel, last);
+				return new Block(current + 1, last);
+			} finally {
+				lock.release();
+			}
+		}
+	}
+
+	/**
+	 * Gives back ids of reserved block that were not used, if counter
+	 * still ends with them. Called when JVM shuts down.
+	 */
+	private void release() {
+		Block b = block;
+		//ids of block are not given out after this
+		long unused = b.next.getAndSet(b.last + 1);
+		if(unused > b.last || !counter.isFile()) {
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(counter.toPath(), StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			FileLock lock = channel.lock();
+			try {
+				if(readCounter(channel) == b.last) {
+					writeCounter(channel, unused - 1);
+				}
+			} finally {
+				lock.release();
+			}
+		} catch (IOException e) {
+			//unused ids are skipped
+		}
+	}
+
+	private long readCounter(FileChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(32);
+		while(buffer.hasRemaining() && channel.read(buffer) != -1) {
+			//counter holds one number
+		}
+		buffer.flip();
+		String s = StandardCharsets.US_ASCII.decode(buffer).toString().trim();
+		try {
+			return s.isEmpty() ? 0 : Long.parseLong(s);
+		} catch (NumberFormatException e) {
+			throw new IOException("Graph counter "+counter+" does not contain number", e);
+		}
+	}
+
+	private static void writeCounter(FileChannel channel, long value) throws IOException {
+		channel.truncate(0);
+		channel.write(StandardCharsets.US_ASCII.encode(Long.toString(value)), 0);
+	}
+
+	/**
+	 * Ids from next to last, both inclusive.
+	 */
+	private static final class Block {
+		final AtomicLong next;
+		final long last;
+
+		Block(long next, long last) {
+			this.next = new AtomicLong(next);
+			this.last = last;
+		}
+	}
+}
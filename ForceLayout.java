@@ -0,0 +1,364 @@
+package GraphViz;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Force directed layout (Fruchterman-Reingold) in which edges pull their
+ * vertices together and all vertices push each other apart. Repulsion
+ * is approximated by Barnes-Hut quadtree, so iteration takes O(n log n)
+ * instead of O(n^2), and forces of vertex ranges are computed in parallel
+ * on ForkJoin common pool. Same graph and seed give same layout.
+ * Ideal edge length is 1.
+ */
+final class ForceLayout {
+	private static final double THETA = 1.0;
+	private static final double GRAVITY = 0.5;
+	private static final int MAX_DEPTH = 48;
+	private static final int PARALLEL_CHUNK = 512;
+	private static final int SMALL_GRAPH = 1000;
+	private static final int SMALL_GRAPH_ITERATIONS = 300;
+	private static final int MIN_ITERATIONS = 40;
+
+	private final int n;
+	private final int[] offsets;
+	private final int[] adjacent;
+	private final double[] x;
+	private final double[] y;
+	private final double[] dx;
+	private final double[] dy;
+	private final QuadTree tree;
+	private double temperature;
+
+	private ForceLayout(int n, int[] from, int[] to, long seed) {
+		this.n = n;
+		//undirected adjacency, edge pulls both of its vertices
+		offsets = new int[n + 1];
+		for(int i = 0; i < from.length; i++) {
+			if(from[i] != to[i]) {
+				offsets[from[i] + 1]++;
+				offsets[to[i] + 1]++;
+			}
+		}
+		for(int v = 0; v < n; v++) {
+			offsets[v + 1] += offsets[v];
+		}
+		adjacent = new int[offsets[n]];
+		int[] next = Arrays.copyOf(offsets, n);
+		for(int i = 0; i < from.length; i++) {
+			if(from[i] != to[i]) {
+				adjacent[next[from[i]]++] = to[i];
+				adjacent[next[to[i]]++] = from[i];
+			}
+		}
+
+		x = new double[n];
+		y = new double[n];
+		dx = new double[n];
+		dy = new double[n];
+		double side = Math.sqrt(n) + 1;
+		SplittableRandom random = new SplittableRandom(seed);
+		for(int v = 0; v < n; v++) {
+			x[v] = random.nextDouble() * side;
+			y[v] = random.nextDouble() * side;
+		}
+		temperature = side / 10;
+		tree = new QuadTree(n);
+	}
+
+	/**
+	 * Lays out graph with n vertices and edges from[i] - to[i].
+	 * @param n
+	 * @param from
+	 * @param to
+	 * @param seed of initial random positions
+	 * @return x and y of vertex v at 2v and 2v + 1
+	 */
+	static double[] layout(int n, int[] from, int[] to, long seed) {
+		double[] xy = new double[2 * n];
+		if(n == 0) {
+			return xy;
+		}
+		ForceLayout layout = new ForceLayout(n, from, to, seed);
+		int iterations = iterations(n);
+		double cooling = layout.temperature / iterations;
+		for(int i = 0; i < iterations; i++) {
+			layout.step();
+			layout.temperature = Math.max(layout.temperature - cooling, 1e-3);
+		}
+		for(int v = 0; v < n; v++) {
+			xy[2 * v] = layout.x[v];
+			xy[2 * v + 1] = layout.y[v];
+		}
+		return xy;
+	}
+
+	/**
+	 * Small graphs get enough iterations to settle, larger graphs fewer
+	 * so layout time grows about linearly with size.
+	 */
+	static int iterations(int n) {
+		if(n <= SMALL_GRAPH) {
+			return SMALL_GRAPH_ITERATIONS;
+		}
+		return Math.max(MIN_ITERATIONS, (int) ((long) SMALL_GRAPH_ITERATIONS * SMALL_GRAPH / n));
+	}
+
+	private void step() {
+		tree.build(x, y);
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		if(n < PARALLEL_CHUNK * 2) {
+			forces(0, n);
+			move(0, n);
+		} else {
+			pool.invoke(new Range(0, n, true));
+			pool.invoke(new Range(0, n, false));
+		}
+	}
+
+	/**
+	 * Computes displacement of vertices in range from positions, which
+	 * are not changed until displacement of every vertex is known.
+	 */
+	private void forces(int from, int to) {
+		int[] stack = new int[4 * MAX_DEPTH + 4];
+		double cx = tree.centerX();
+		double cy = tree.centerY();
+		for(int v = from; v < to; v++) {
+			double fx = 0;
+			double fy = 0;
+			//repulsion 1/d from every other vertex, far cells as one body
+			int top = 0;
+			stack[top++] = 0;
+			while(top > 0) {
+				int cell = stack[--top];
+				int mass = tree.mass[cell];
+				if(mass == 0) {
+					continue;
+				}
+				double ddx = x[v] - tree.comX[cell];
+				double ddy = y[v] - tree.comY[cell];
+				double d2 = ddx * ddx + ddy * ddy;
+				int child = tree.child[cell];
+				if(child >= 0 && (4 * tree.half[cell] * tree.half[cell]) >= THETA * THETA * d2) {
+					stack[top++] = child;
+					stack[top++] = child + 1;
+					stack[top++] = child + 2;
+					stack[top++] = child + 3;
+					continue;
+				}
+				if(child < 0 && tree.body[cell] == v) {
+					mass--;
+					if(mass == 0) {
+						continue;
+					}
+				}
+				if(d2 < 1e-12) {
+					//coinciding vertices are pushed apart in direction given by vertex
+					double angle = v * 2.399963229728653;
+					fx += Math.cos(angle) * mass;
+					fy += Math.sin(angle) * mass;
+					continue;
+				}
+				double f = mass / d2;
+				fx += ddx * f;
+				fy += ddy * f;
+			}
+			//attraction d^2 along edges
+			for(int i = offsets[v]; i < offsets[v + 1]; i++) {
+				int w = adjacent[i];
+				double ddx = x[w] - x[v];
+				double ddy = y[w] - y[v];
+				double d = Math.sqrt(ddx * ddx + ddy * ddy);
+				fx += ddx * d;
+				fy += ddy * d;
+			}
+			//gravity keeps components from drifting away
+			fx -= (x[v] - cx) * GRAVITY;
+			fy -= (y[v] - cy) * GRAVITY;
+			dx[v] = fx;
+			dy[v] = fy;
+		}
+	}
+
+	/**
+	 * Moves vertices by displacement, limited by temperature.
+	 */
+	private void move(int from, int to) {
+		double t = temperature;
+		for(int v = from; v < to; v++) {
+			double d = Math.sqrt(dx[v] * dx[v] + dy[v] * dy[v]);
+			if(d > 0) {
+				double s = Math.min(d, t) / d;
+				x[v] += dx[v] * s;
+				y[v] += dy[v] * s;
+			}
+		}
+	}
+
+	private final class Range extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from;
+		private final int to;
+		private final boolean forces;
+
+		Range(int from, int to, boolean forces) {
+			this.from = from;
+			this.to = to;
+			this.forces = forces;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from <= PARALLEL_CHUNK) {
+				if(forces) {
+					forces(from, to);
+				} else {
+					move(from, to);
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new Range(from, mid, forces), new Range(mid, to, forces));
+		}
+	}
+
+	/**
+	 * Quadtree kept in arrays, cell 0 is root and children of cell are
+	 * four consecutive cells starting at child[cell]. Cell knows number
+	 * of vertices in it and their center of mass. Cells at maximum depth
+	 * hold all vertices that fall in them.
+	 */
+	private static final class QuadTree {
+		int[] mass;
+		double[] comX;
+		double[] comY;
+		double[] half;
+		int[] child;
+		int[] body;
+		private double[] midX;
+		private double[] midY;
+		private int[] depth;
+		private int cells;
+
+		QuadTree(int n) {
+			allocate(Math.max(16, 2 * n));
+		}
+
+		double centerX() {
+			return comX[0];
+		}
+
+		double centerY() {
+			return comY[0];
+		}
+
+		void build(double[] x, double[] y) {
+			double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+			double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+			for(int v = 0; v < x.length; v++) {
+				minX = Math.min(minX, x[v]);
+				maxX = Math.max(maxX, x[v]);
+				minY = Math.min(minY, y[v]);
+				maxY = Math.max(maxY, y[v]);
+			}
+			cells = 0;
+			newCell((minX + maxX) / 2, (minY + maxY) / 2, Math.max(maxX - minX, maxY - minY) / 2 + 1e-9, 0);
+			for(int v = 0; v < x.length; v++) {
+				insert(v, x[v], y[v], x, y);
+			}
+			//sums of positions become centers of mass
+			for(int c = 0; c < cells; c++) {
+				if(mass[c] > 0) {
+					comX[c] /= mass[c];
+					comY[c] /= mass[c];
+				}
+			}
+		}
+
+		private void insert(int v, double vx, double vy, double[] x, double[] y) {
+			int cell = 0;
+			while(true) {
+				if(child[cell] >= 0) {
+					mass[cell]++;
+					comX[cell] += vx;
+					comY[cell] += vy;
+					cell = child[cell] + quadrant(cell, vx, vy);
+					continue;
+				}
+				if(mass[cell] == 0 || depth[cell] == MAX_DEPTH) {
+					if(mass[cell] == 0) {
+						body[cell] = v;
+					}
+					mass[cell]++;
+					comX[cell] += vx;
+					comY[cell] += vy;
+					return;
+				}
+				//split leaf, its vertex moves to child and v is inserted again
+				int b = body[cell];
+				int first = cells;
+				double h = half[cell] / 2;
+				int d = depth[cell] + 1;
+				newCell(midX[cell] - h, midY[cell] - h, h, d);
+				newCell(midX[cell] + h, midY[cell] - h, h, d);
+				newCell(midX[cell] - h, midY[cell] + h, h, d);
+				newCell(midX[cell] + h, midY[cell] + h, h, d);
+				child[cell] = first;
+				body[cell] = -1;
+				int c = first + quadrant(cell, x[b], y[b]);
+				body[c] = b;
+				mass[c] = 1;
+				comX[c] = x[b];
+				comY[c] = y[b];
+			}
+		}
+
+		private int quadrant(int cell, double vx, double vy) {
+			return (vx >= midX[cell] ? 1 : 0) + (vy >= midY[cell] ? 2 : 0);
+		}
+
+		private void newCell(double mx, double my, double h, int d) {
+			if(cells == mass.length) {
+				grow();
+			}
+			int c = cells++;
+			mass[c] = 0;
+			comX[c] = 0;
+			comY[c] = 0;
+			midX[c] = mx;
+			midY[c] = my;
+			half[c] = h;
+			child[c] = -1;
+			body[c] = -1;
+			depth[c] = d;
+		}
+
+		private void allocate(int capacity) {
+			mass = new int[capacity];
+			comX = new double[capacity];
+			comY = new double[capacity];
+			half = new double[capacity];
+			child = new int[capacity];
+			body = new int[capacity];
+			midX = new double[capacity];
+			midY = new double[capacity];
+			depth = new int[capacity];
+		}
+
+		private void grow() {
+			int capacity = mass.length * 2;
+			mass = Arrays.copyOf(mass, capacity);
+			comX = Arrays.copyOf(comX, capacity);
+			comY = Arrays.copyOf(comY, capacity);
+			half = Arrays.copyOf(half, capacity);
+			child = Arrays.copyOf(child, capacity);
+			body = Arrays.copyOf(body, capacity);
+			midX = Arrays.copyOf(midX, capacity);
+			midY = Arrays.copyOf(midY, capacity);
+			depth = Arrays.copyOf(depth, capacity);
+		}
+	}
+}
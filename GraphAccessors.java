@@ -0,0 +1,182 @@
+package GraphViz;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Graph and edge methods used by GraphViz resolved once per concrete class.
+ * Method names are fixed when instance is created, GraphViz drops its
+ * instance whenever one of method names is changed by set methods.
+ */
+final class GraphAccessors {
+	private static final MethodType INT_GETTER = MethodType.methodType(int.class, Object.class);
+	private static final MethodType INT_FUNCTION = MethodType.methodType(int.class, Object.class, int.class);
+	private static final MethodType DOUBLE_GETTER = MethodType.methodType(double.class, Object.class);
+	private static final MethodType OBJECT_GETTER = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType OBJECT_FUNCTION = MethodType.methodType(Object.class, Object.class, int.class);
+
+	private final ClassValue<Accessor> numberOfVertices;
+	private final ClassValue<Accessor> adjacentVertices;
+	private final ClassValue<Accessor> edges;
+	private final ClassValue<Accessor> edgeWeight;
+	private final ClassValue<Accessor> edgeWeightedGraphEither;
+	private final ClassValue<Accessor> edgeWeightedGraphOther;
+	private final ClassValue<Accessor> edgeWeightedDigraphFrom;
+	private final ClassValue<Accessor> edgeWeightedDigraphTo;
+
+	GraphAccessors(String numberOfVerticesMethodName, String adjacentVerticesMethodName,
+			String edgeMethodName, String edgeWeightMethodName,
+			String edgeWeightedGraphEither, String edgeWeightedGraphOther,
+			String edgeWeightedDigraphFrom, String edgeWeightedDigraphTo) {
+		this.numberOfVertices = cache(numberOfVerticesMethodName, INT_GETTER);
+		this.adjacentVertices = cache(adjacentVerticesMethodName, OBJECT_FUNCTION);
+		this.edges = cache(edgeMethodName, OBJECT_GETTER);
+		this.edgeWeight = cache(edgeWeightMethodName, DOUBLE_GETTER);
+		this.edgeWeightedGraphEither = cache(edgeWeightedGraphEither, INT_GETTER);
+		this.edgeWeightedGraphOther = cache(edgeWeightedGraphOther, INT_FUNCTION);
+		this.edgeWeightedDigraphFrom = cache(edgeWeightedDigraphFrom, INT_GETTER);
+		this.edgeWeightedDigraphTo = cache(edgeWeightedDigraphTo, INT_GETTER);
+	}
+
+	Accessor numberOfVertices(Class<?> graphClass) throws NoSuchMethodException, IllegalAccessException {
+		return numberOfVertices.get(graphClass).check();
+	}
+
+	Accessor adjacentVertices(Class<?> graphClass) throws NoSuchMethodException, IllegalAccessException {
+		return adjacentVertices.get(graphClass).check();
+	}
+
+	Accessor edges(Class<?> graphClass) throws NoSuchMethodException, IllegalAccessException {
+		return edges.get(graphClass).check();
+	}
+
+	Accessor edgeWeight(Class<?> edgeClass) throws NoSuchMethodException, IllegalAccessException {
+		return edgeWeight.get(edgeClass).check();
+	}
+
+	Accessor edgeWeightedGraphEither(Class<?> edgeClass) throws NoSuchMethodException, IllegalAccessException {
+		return edgeWeightedGraphEither.get(edgeClass).check();
+	}
+
+	Accessor edgeWeightedGraphOther(Class<?> edgeClass) throws NoSuchMethodException, IllegalAccessException {
+		return edgeWeightedGraphOther.get(edgeClass).check();
+	}
+
+	Accessor edgeWeightedDigraphFrom(Class<?> edgeClass) throws NoSuchMethodException, IllegalAccessException {
+		return edgeWeightedDigraphFrom.get(edgeClass).check();
+	}
+
+	Accessor edgeWeightedDigraphTo(Class<?> edgeClass) throws NoSuchMethodException, IllegalAccessException {
+		return edgeWeightedDigraphTo.get(edgeClass).check();
+	}
+
+	private static ClassValue<Accessor> cache(String methodName, MethodType methodType) {
+		return new ClassValue<Accessor>() {
+			@Override
+			protected Accessor computeValue(Class<?> type) {
+				return Accessor.resolve(type, methodName, methodType);
+			}
+		};
+	}
+
+	/**
+	 * Public method of some class adapted to one of fixed method types,
+	 * or reason why such method can't be used.
+	 */
+	static final class Accessor {
+		private final String methodName;
+		private final MethodHandle handle;
+		private final ReflectiveOperationException failure;
+
+		private Accessor(String methodName, MethodHandle handle, ReflectiveOperationException failure) {
+			this.methodName = methodName;
+			this.handle = handle;
+			this.failure = failure;
+		}
+
+		/**
+		 * Looks up method the same way Class.getMethod does and adapts its
+		 * handle to required type, so it can be called with invokeExact.
+		 * @param type
+		 * @param methodName
+		 * @param methodType
+		 * @return accessor
+		 */
+		static Accessor resolve(Class<?> type, String methodName, MethodType methodType) {
+			try {
+				Method method = methodType.parameterCount() == 1
+						? type.getMethod(methodName)
+						: type.getMethod(methodName, int.class);
+				MethodHandle handle = MethodHandles.publicLookup().unreflect(method).asType(methodType);
+				return new Accessor(methodName, handle, null);
+			} catch (NoSuchMethodException | IllegalAccessException | SecurityException | WrongMethodTypeException e) {
+				ReflectiveOperationException failure;
+				if(e instanceof ReflectiveOperationException) {
+					failure = (ReflectiveOperationException) e;
+				} else {
+					failure = new NoSuchMethodException(type.getName()+"."+methodName);
+					failure.initCause(e);
+				}
+				return new Accessor(methodName, null, failure);
+			}
+		}
+
+		private Accessor check() throws NoSuchMethodException, IllegalAccessException {
+			if(failure == null) {
+				return this;
+			}
+			if(failure instanceof IllegalAccessException) {
+				IllegalAccessException e = new IllegalAccessException(failure.getMessage());
+				e.initCause(failure);
+				throw e;
+			}
+			NoSuchMethodException e = new NoSuchMethodException(methodName);
+			e.initCause(failure);
+			throw e;
+		}
+
+		int invokeInt(Object target) throws InvocationTargetException {
+			try {
+				return (int) handle.invokeExact(target);
+			} catch (Throwable t) {
+				throw new InvocationTargetException(t);
+			}
+		}
+
+		int invokeInt(Object target, int arg) throws InvocationTargetException {
+			try {
+				return (int) handle.invokeExact(target, arg);
+			} catch (Throwable t) {
+				throw new InvocationTargetException(t);
+			}
+		}
+
+		double invokeDouble(Object target) throws InvocationTargetException {
+			try {
+				return (double) handle.invokeExact(target);
+			} catch (Throwable t) {
+				throw new InvocationTargetException(t);
+			}
+		}
+
+		Object invoke(Object target) throws InvocationTargetException {
+			try {
+				return (Object) handle.invokeExact(target);
+			} catch (Throwable t) {
+				throw new InvocationTargetException(t);
+			}
+		}
+
+		Object invoke(Object target, int arg) throws InvocationTargetException {
+			try {
+				return (Object) handle.invokeExact(target, arg);
+			} catch (Throwable t) {
+				throw new InvocationTargetException(t);
+			}
+		}
+	}
+}
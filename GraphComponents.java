@@ -0,0 +1,293 @@
+package GraphViz;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Connected components of drawn graph, weakly connected for digraphs,
+ * found by union-find while dot is written. Written edges are kept, so
+ * after components are split in groups of similar size dot of each
+ * group is written from kept edges without reading graph again. Only
+ * vertices that are ends of edges belong to some component.
+ */
+final class GraphComponents {
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private boolean directed;
+	private boolean weighted;
+	private boolean countWeights;
+
+	//parent in union-find tree, -1 for vertex that is not drawn
+	private int[] parent = newParents(INITIAL_CAPACITY);
+	//vertices in tree of root, valid only for roots
+	private int[] size = new int[INITIAL_CAPACITY];
+	private int maxVertex = -1;
+
+	//written edges, ordered by group after partition
+	private int[] from = new int[INITIAL_CAPACITY];
+	private int[] to = new int[INITIAL_CAPACITY];
+	//weights of edges, null for unweighted graph
+	private double[] weights;
+	private int edges;
+
+	//group of each vertex after partition, -1 for vertex that is not drawn
+	private int[] group;
+	private int[] groupVertices;
+	//edges of group g are at groupStart[g] to groupStart[g + 1] - 1
+	private int[] groupStart;
+	private int components;
+
+	/**
+	 * Prepares for edges of source, edges joined before are dropped.
+	 * @param source
+	 */
+	void begin(GraphSource source) {
+		directed = source.isDirected();
+		weighted = source.isWeighted();
+		countWeights = source.hasCountWeights();
+		weights = weighted ? new double[from.length] : null;
+		edges = 0;
+	}
+
+	/**
+	 * Keeps edge and joins components of its ends.
+	 * @param v
+	 * @param w
+	 * @param weight
+	 */
+	void union(int v, int w, double weight) {
+		ensureCapacity(Math.max(v, w));
+		if(edges == from.length) {
+			int capacity = 2 * edges;
+			from = Arrays.copyOf(from, capacity);
+			to = Arrays.copyOf(to, capacity);
+			if(weights != null) {
+				weights = Arrays.copyOf(weights, capacity);
+			}
+		}
+		from[edges] = v;
+		to[edges] = w;
+		if(weights != null) {
+			weights[edges] = weight;
+		}
+		edges++;
+
+		int a = find(add(v));
+		int b = find(add(w));
+		if(a == b) {
+			return;
+		}
+		if(size[a] < size[b]) {
+			int t = a;
+			a = b;
+			b = t;
+		}
+		parent[b] = a;
+		size[a] += size[b];
+	}
+
+	private int add(int v) {
+		if(parent[v] < 0) {
+			parent[v] = v;
+			size[v] = 1;
+			maxVertex = Math.max(maxVertex, v);
+		}
+		return v;
+	}
+
+	private int find(int v) {
+		while(parent[v] != v) {
+			//path halving
+			parent[v] = parent[parent[v]];
+			v = parent[v];
+		}
+		return v;
+	}
+
+	private void ensureCapacity(int v) {
+		if(v < parent.length) {
+			return;
+		}
+		int length = parent.length;
+		int capacity = Math.max(v + 1, 2 * length);
+		parent = Arrays.copyOf(parent, capacity);
+		Arrays.fill(parent, length, capacity, -1);
+		size = Arrays.copyOf(size, capacity);
+	}
+
+	private static int[] newParents(int capacity) {
+		int[] p = new int[capacity];
+		Arrays.fill(p, -1);
+		return p;
+	}
+
+	/**
+	 * Splits components in at most maxGroups groups, largest components
+	 * first, each into group with fewest vertices and edges so far, and
+	 * orders kept edges by group.
+	 * @param maxGroups
+	 * @return number of groups, 0 if graph has no edges
+	 */
+	int partition(int maxGroups) {
+		int n = maxVertex + 1;
+		int[] componentOf = new int[n];
+		Arrays.fill(componentOf, -1);
+		int count = 0;
+		for(int v = 0; v < n; v++) {
+			if(parent[v] >= 0 && find(v) == v) {
+				componentOf[v] = count++;
+			}
+		}
+		int[] componentVertices = new int[count];
+		long[] componentEdges = new long[count];
+		for(int v = 0; v < n; v++) {
+			if(parent[v] >= 0) {
+				int c = componentOf[find(v)];
+				componentOf[v] = c;
+				componentVertices[c]++;
+			}
+		}
+		for(int e = 0; e < edges; e++) {
+			componentEdges[componentOf[from[e]]]++;
+		}
+
+		//size in high bits and component in low bits, so sorting orders components by size
+		long[] work = new long[count];
+		for(int c = 0; c < count; c++) {
+			work[c] = Math.min(componentVertices[c] + componentEdges[c], Integer.MAX_VALUE) << 32 | c;
+		}
+		Arrays.sort(work, 0, count);
+		int groups = Math.min(count, Math.max(1, maxGroups));
+		long[] load = new long[groups];
+		int[] groupOfComponent = new int[count];
+		groupVertices = new int[groups];
+		for(int i = count - 1; i >= 0; i--) {
+			int c = (int) work[i];
+			int g = 0;
+			for(int h = 1; h < groups; h++) {
+				if(load[h] < load[g]) {
+					g = h;
+				}
+			}
+			load[g] += work[i] >>> 32;
+			groupOfComponent[c] = g;
+			groupVertices[g] += componentVertices[c];
+		}
+		group = new int[n];
+		for(int v = 0; v < n; v++) {
+			group[v] = componentOf[v] >= 0 ? groupOfComponent[componentOf[v]] : -1;
+		}
+		components = count;
+		orderEdges(groups);
+		return groups;
+	}
+
+	/**
+	 * Counting sort of kept edges by group, edges of group keep order
+	 * in which they were written.
+	 * @param groups
+	 */
+	private void orderEdges(int groups) {
+		groupStart = new int[groups + 1];
+		for(int e = 0; e < edges; e++) {
+			groupStart[group[from[e]] + 1]++;
+		}
+		for(int g = 0; g < groups; g++) {
+			groupStart[g + 1] += groupStart[g];
+		}
+		int[] next = Arrays.copyOf(groupStart, groups);
+		int[] f = new int[edges];
+		int[] t = new int[edges];
+		double[] w = weights != null ? new double[edges] : null;
+		for(int e = 0; e < edges; e++) {
+			int i = next[group[from[e]]]++;
+			f[i] = from[e];
+			t[i] = to[e];
+			if(w != null) {
+				w[i] = weights[e];
+			}
+		}
+		from = f;
+		to = t;
+		weights = w;
+	}
+
+	/**
+	 * @return number of components found by last partition
+	 */
+	int componentCount() {
+		return components;
+	}
+
+	int vertexCount(int g) {
+		return groupVertices[g];
+	}
+
+	long edgeCount(int g) {
+		return groupStart[g + 1] - groupStart[g];
+	}
+
+	/**
+	 * Part of graph with kept edges of one group, vertices keep their numbers.
+	 * @param g group
+	 * @return graph source of group
+	 */
+	GraphSource group(int g) {
+		return new Group(g);
+	}
+
+	private final class Group implements GraphSource {
+		private final int g;
+
+		Group(int g) {
+			this.g = g;
+		}
+
+		@Override
+		public int vertexCount() {
+			return maxVertex + 1;
+		}
+
+		@Override
+		public boolean isDirected() {
+			return directed;
+		}
+
+		@Override
+		public boolean isWeighted() {
+			return weighted;
+		}
+
+		@Override
+		public boolean hasCountWeights() {
+			return countWeights;
+		}
+
+		@Override
+		public void forEachNeighbor(int v, IntConsumer action) {
+			for(int e = groupStart[g]; e < groupStart[g + 1]; e++) {
+				if(from[e] == v) {
+					action.accept(to[e]);
+				} else if(!directed && to[e] == v) {
+					action.accept(from[e]);
+				}
+			}
+		}
+
+		/**
+		 * Visits kept edges of group in order they were written, edges
+		 * of undirected graph were already visited once.
+		 */
+		@Override
+		public void forEachEdge(EdgeConsumer action) {
+			for(int e = groupStart[g]; e < groupStart[g + 1]; e++) {
+				action.accept(from[e], to[e], weights != null ? weights[e] : 1.0);
+			}
+		}
+
+		@Override
+		public boolean visitsEdgesByVertex() {
+			return false;
+		}
+	}
+}
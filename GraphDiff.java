@@ -0,0 +1,129 @@
+package GraphViz;
+
+import java.util.BitSet;
+
+/**
+ * Edges added and removed between two snapshots of same graph.
+ * Only vertices whose hashes differ are compared edge by edge.
+ * Parallel edges are counted, so removing one of two equal edges
+ * is seen as removal. Changed weight is seen as removed and added edge.
+ */
+public final class GraphDiff {
+	private final GraphSnapshot current;
+	//positions of added edges in edges of current snapshot
+	private final BitSet added;
+	private final GraphSnapshot.EdgeList removed;
+
+	private GraphDiff(GraphSnapshot current, BitSet added, GraphSnapshot.EdgeList removed) {
+		this.current = current;
+		this.added = added;
+		this.removed = removed;
+	}
+
+	/**
+	 * @param previous snapshot, null if there is none
+	 * @param current snapshot
+	 * @return diff, all edges of current are added if previous is null
+	 */
+	public static GraphDiff between(GraphSnapshot previous, GraphSnapshot current) {
+		BitSet added = new BitSet(current.edgeCount());
+		GraphSnapshot.EdgeList removed = new GraphSnapshot.EdgeList();
+		if(previous == null) {
+			added.set(0, current.edgeCount());
+			return new GraphDiff(current, added, removed);
+		}
+
+		int n = Math.max(previous.vertexCount(), current.vertexCount());
+		for(int v = 0; v < n; v++) {
+			int cs = 0, ce = 0, ps = 0, pe = 0;
+			if(v < current.vertexCount()) {
+				cs = current.offsets[v];
+				ce = current.offsets[v + 1];
+			}
+			if(v < previous.vertexCount()) {
+				ps = previous.offsets[v];
+				pe = previous.offsets[v + 1];
+			}
+			if(ce - cs == pe - ps && (ce == cs || current.hashes[v] == previous.hashes[v])) {
+				continue;
+			}
+
+			//both are sorted by target and weight
+			int c = cs;
+			int p = ps;
+			while(c < ce || p < pe) {
+				int cmp;
+				if(c == ce) {
+					cmp = 1;
+				} else if(p == pe) {
+					cmp = -1;
+				} else {
+					cmp = GraphSnapshot.compare(current.targets[c], current.weight(c),
+							previous.targets[p], previous.weight(p));
+				}
+				if(cmp == 0) {
+					c++;
+					p++;
+				} else if(cmp < 0) {
+					added.set(c++);
+				} else {
+					removed.add(v, previous.targets[p], previous.weight(p));
+					p++;
+				}
+			}
+		}
+		return new GraphDiff(current, added, removed);
+	}
+
+	public boolean isEmpty() {
+		return added.isEmpty() && removed.size == 0;
+	}
+
+	public int addedCount() {
+		return added.cardinality();
+	}
+
+	public int removedCount() {
+		return removed.size;
+	}
+
+	public GraphSnapshot current() {
+		return current;
+	}
+
+	/**
+	 * Visits all edges of current snapshot.
+	 * @param action receives edge and whether it was added
+	 */
+	public void forEachCurrent(DiffEdgeConsumer action) {
+		for(int v = 0; v < current.vertexCount(); v++) {
+			for(int i = current.offsets[v]; i < current.offsets[v + 1]; i++) {
+				action.accept(v, current.targets[i], current.weight(i), added.get(i));
+			}
+		}
+	}
+
+	public void forEachAdded(GraphSource.EdgeConsumer action) {
+		int v = 0;
+		for(int i = added.nextSetBit(0); i >= 0; i = added.nextSetBit(i + 1)) {
+			while(current.offsets[v + 1] <= i) {
+				v++;
+			}
+			action.accept(v, current.targets[i], current.weight(i));
+		}
+	}
+
+	public void forEachRemoved(GraphSource.EdgeConsumer action) {
+		for(int i = 0; i < removed.size; i++) {
+			action.accept(removed.from[i], removed.to[i], removed.weight[i]);
+		}
+	}
+
+	/**
+	 * Receives edge of current snapshot and whether it was added.
+	 */
+	@FunctionalInterface
+	public interface DiffEdgeConsumer {
+		void accept(int from, int to, double weight, boolean added);
+	}
+}
@@ -0,0 +1,93 @@
+package GraphViz;
+
+/**
+ * Reduces large graph to part of it that can be laid out and read.
+ * Reduction is applied to graph source while dot is written, vertices
+ * keep their numbers. Reductions can be combined by using andThen.
+ */
+@FunctionalInterface
+public interface GraphReduction {
+
+	/**
+	 * @param source
+	 * @return reduced graph source
+	 */
+	GraphSource apply(GraphSource source);
+
+	/**
+	 * @param next reduction applied to result of this one
+	 * @return combined reduction
+	 */
+	default GraphReduction andThen(GraphReduction next) {
+		return source -> next.apply(apply(source));
+	}
+
+	/**
+	 * Keeps vertices reachable from seed vertices in at most hops edges
+	 * and edges between them. Edges of digraph are followed only in their
+	 * direction.
+	 * @param seeds
+	 * @param hops
+	 * @return reduction
+	 */
+	static GraphReduction neighbourhood(int[] seeds, int hops) {
+		if(hops < 0) {
+			throw new IllegalArgumentException();
+		}
+		int[] copy = seeds.clone();
+		return source -> new ReducedGraphSources.Induced(source,
+				ReducedGraphSources.neighbourhood(source, copy, hops));
+	}
+
+	/**
+	 * Keeps count vertices with largest degree and edges between them,
+	 * when degrees are equal vertex with smaller number is kept.
+	 * @param count
+	 * @return reduction
+	 */
+	static GraphReduction topDegree(int count) {
+		if(count < 0) {
+			throw new IllegalArgumentException();
+		}
+		return source -> new ReducedGraphSources.Induced(source,
+				ReducedGraphSources.topDegree(source, count));
+	}
+
+	/**
+	 * Keeps at most maxEdges edges chosen uniformly at random, same seed
+	 * chooses same edges of same graph. Kept edges are visited in their
+	 * original order.
+	 * @param maxEdges
+	 * @param seed
+	 * @return reduction
+	 */
+	static GraphReduction edgeSample(int maxEdges, long seed) {
+		if(maxEdges < 0) {
+			throw new IllegalArgumentException();
+		}
+		return source -> ReducedGraphSources.Sample.of(source, maxEdges, seed);
+	}
+
+	/**
+	 * Collapses parallel edges between same pair of vertices into one
+	 * edge, labeled with number of collapsed edges or with sum, minimum
+	 * or maximum of their weights. Unweighted edges have weight 1.
+	 * Counts are written as whole numbers, sums, minimums and maximums
+	 * with weight precision of GraphViz.
+	 * @param aggregation
+	 * @return reduction
+	 */
+	static GraphReduction aggregate(Aggregation aggregation) {
+		if(aggregation == null) {
+			throw new IllegalArgumentException();
+		}
+		return source -> ReducedGraphSources.Aggregated.of(source, aggregation);
+	}
+
+	/**
+	 * How weights of parallel edges are combined by aggregate.
+	 */
+	enum Aggregation {
+		COUNT, SUM, MIN, MAX
+	}
+}
@@ -0,0 +1,200 @@
+package GraphViz;
+
+import java.util.Arrays;
+
+/**
+ * Compact copy of edge set of graph, used to find edges added and removed
+ * between two versions of same graph. Edges are kept in compressed sparse
+ * row format, sorted by target and weight within each vertex, with one hash
+ * per vertex, so vertices whose edges did not change are compared by hash
+ * only. Edges of undirected graph are kept from their smaller vertex.
+ */
+public final class GraphSnapshot {
+	private final int vertexCount;
+	private final boolean directed;
+	private final boolean weighted;
+	final int[] offsets;
+	final int[] targets;
+	final double[] weights;
+	final long[] hashes;
+
+	private GraphSnapshot(int vertexCount, boolean directed, boolean weighted,
+			int[] offsets, int[] targets, double[] weights, long[] hashes) {
+		this.vertexCount = vertexCount;
+		this.directed = directed;
+		this.weighted = weighted;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.weights = weights;
+		this.hashes = hashes;
+	}
+
+	/**
+	 * Takes snapshot of graph in one pass over its edges.
+	 * @param source
+	 * @return snapshot
+	 */
+	public static GraphSnapshot of(GraphSource source) {
+		int n = source.vertexCount();
+		boolean directed = source.isDirected();
+		boolean weighted = source.isWeighted();
+
+		EdgeList edges = new EdgeList();
+		source.forEachEdge((v, w, weight) -> {
+			if(!directed && v > w) {
+				edges.add(w, v, weight);
+			} else {
+				edges.add(v, w, weight);
+			}
+		});
+
+		//counting sort of edges by source vertex
+		int[] offsets = new int[n + 1];
+		for(int i = 0; i < edges.size; i++) {
+			offsets[edges.from[i] + 1]++;
+		}
+		for(int v = 0; v < n; v++) {
+			offsets[v + 1] += offsets[v];
+		}
+		int[] cursor = Arrays.copyOf(offsets, n);
+		int[] targets = new int[edges.size];
+		double[] weights = weighted ? new double[edges.size] : null;
+		for(int i = 0; i < edges.size; i++) {
+			int at = cursor[edges.from[i]]++;
+			targets[at] = edges.to[i];
+			if(weighted) {
+				weights[at] = edges.weight[i];
+			}
+		}
+
+		long[] hashes = new long[n];
+		for(int v = 0; v < n; v++) {
+			sort(targets, weights, offsets[v], offsets[v + 1] - 1);
+			long h = 0;
+			for(int i = offsets[v]; i < offsets[v + 1]; i++) {
+				h += mix(targets[i], weights != null ? weights[i] : 1.0);
+			}
+			hashes[v] = h;
+		}
+		return new GraphSnapshot(n, directed, weighted, offsets, targets, weights, hashes);
+	}
+
+	public int vertexCount() {
+		return vertexCount;
+	}
+
+	public int edgeCount() {
+		return targets.length;
+	}
+
+	public boolean isDirected() {
+		return directed;
+	}
+
+	public boolean isWeighted() {
+		return weighted;
+	}
+
+	double weight(int i) {
+		return weights != null ? weights[i] : 1.0;
+	}
+
+	/**
+	 * Compares edges by target, then by weight.
+	 */
+	static int compare(int t1, double w1, int t2, double w2) {
+		return t1 != t2 ? Integer.compare(t1, t2) : Double.compare(w1, w2);
+	}
+
+	/**
+	 * Hash of one edge, hash of vertex is sum of hashes of its edges
+	 * so it does not depend on order of edges.
+	 */
+	private static long mix(int target, double weight) {
+		long h = target * 0x9E3779B97F4A7C15L ^ Double.doubleToLongBits(weight);
+		h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+		h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return h ^ (h >>> 33);
+	}
+
+	/**
+	 * Quicksort of targets and weights between lo and hi, both inclusive.
+	 */
+	private static void sort(int[] targets, double[] weights, int lo, int hi) {
+		while(lo < hi) {
+			if(hi - lo < 16) {
+				insertionSort(targets, weights, lo, hi);
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			int pt = targets[mid];
+			double pw = weights != null ? weights[mid] : 1.0;
+			int i = lo;
+			int j = hi;
+			while(i <= j) {
+				while(compare(targets[i], w(weights, i), pt, pw) < 0) {
+					i++;
+				}
+				while(compare(targets[j], w(weights, j), pt, pw) > 0) {
+					j--;
+				}
+				if(i <= j) {
+					swap(targets, weights, i++, j--);
+				}
+			}
+			//recurse into smaller part, loop on larger
+			if(j - lo < hi - i) {
+				sort(targets, weights, lo, j);
+				lo = i;
+			} else {
+				sort(targets, weights, i, hi);
+				hi = j;
+			}
+		}
+	}
+
+	private static void insertionSort(int[] targets, double[] weights, int lo, int hi) {
+		for(int i = lo + 1; i <= hi; i++) {
+			for(int j = i; j > lo && compare(targets[j], w(weights, j), targets[j - 1], w(weights, j - 1)) < 0; j--) {
+				swap(targets, weights, j, j - 1);
+			}
+		}
+	}
+
+	private static double w(double[] weights, int i) {
+		return weights != null ? weights[i] : 1.0;
+	}
+
+	private static void swap(int[] targets, double[] weights, int i, int j) {
+		int t = targets[i];
+		targets[i] = targets[j];
+		targets[j] = t;
+		if(weights != null) {
+			double w = weights[i];
+			weights[i] = weights[j];
+			weights[j] = w;
+		}
+	}
+
+	/**
+	 * Growable arrays of edges.
+	 */
+	static final class EdgeList {
+		int[] from = new int[64];
+		int[] to = new int[64];
+		double[] weight = new double[64];
+		int size;
+
+		void add(int v, int w, double wt) {
+			if(size == from.length) {
+				from = Arrays.copyOf(from, size * 2);
+				to = Arrays.copyOf(to, size * 2);
+				weight = Arrays.copyOf(weight, size * 2);
+			}
+			from[size] = v;
+			to[size] = w;
+			weight[size] = wt;
+			size++;
+		}
+	}
+}
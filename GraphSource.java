@@ -0,0 +1,119 @@
+package GraphViz;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Graph visited through primitive callbacks, so no objects are created
+ * per edge. Vertices are numbered from 0 to vertexCount() - 1.
+ * Undirected graphs keep each edge in adjacency of both of its vertices,
+ * same as Graph and EdgeWeightedGraph on Data Structures and Algorithms 3
+ * course, forEachEdge(EdgeConsumer) visits such edge only once.
+ * GraphViz accepts GraphSource everywhere graph object is accepted.
+ */
+public interface GraphSource {
+
+	int vertexCount();
+
+	boolean isDirected();
+
+	default boolean isWeighted() {
+		return false;
+	}
+
+	/**
+	 * Whether weights are whole numbers that count something, such as
+	 * collapsed parallel edges, they are written without fraction.
+	 * @return false unless weights are counts
+	 */
+	default boolean hasCountWeights() {
+		return false;
+	}
+
+	/**
+	 * Visits vertices adjacent to vertex v.
+	 * @param v
+	 * @param action
+	 */
+	void forEachNeighbor(int v, IntConsumer action);
+
+	/**
+	 * Visits edges in adjacency of vertex v, unweighted edges have weight 1.
+	 * @param v
+	 * @param action
+	 */
+	default void forEachEdge(int v, EdgeConsumer action) {
+		forEachNeighbor(v, w -> action.accept(v, w, 1.0));
+	}
+
+	/**
+	 * Visits every edge of graph once, by default vertex by vertex.
+	 * Edge of undirected graph is visited from its smaller vertex,
+	 * self loops of undirected graph are not visited.
+	 * @param action
+	 */
+	default void forEachEdge(EdgeConsumer action) {
+		EdgeConsumer each = isDirected() ? action : (v, w, weight) -> {
+			if(v < w) {
+				action.accept(v, w, weight);
+			}
+		};
+		int n = vertexCount();
+		for(int v = 0; v < n; v++) {
+			forEachEdge(v, each);
+		}
+	}
+
+	/**
+	 * Whether forEachEdge(EdgeConsumer) visits edges vertex by vertex, in
+	 * same order as forEachEdge(int, EdgeConsumer) for each vertex. Only
+	 * such graphs are split in vertex ranges written in parallel.
+	 * @return true unless forEachEdge(EdgeConsumer) is overridden
+	 */
+	default boolean visitsEdgesByVertex() {
+		return true;
+	}
+
+	/**
+	 * Graph given as adjacency arrays, adjacency[v] holds vertices
+	 * adjacent to v.
+	 * @param adjacency
+	 * @param directed
+	 * @return graph source
+	 */
+	static GraphSource of(int[][] adjacency, boolean directed) {
+		return new ArrayGraphSources.Adjacency(adjacency, directed);
+	}
+
+	/**
+	 * Unweighted graph in compressed sparse row format.
+	 * @param offsets
+	 * @param targets
+	 * @param directed
+	 * @return graph source
+	 */
+	static GraphSource csr(int[] offsets, int[] targets, boolean directed) {
+		return new ArrayGraphSources.Csr(offsets, targets, null, directed);
+	}
+
+	/**
+	 * Graph in compressed sparse row format, edges of vertex v are
+	 * targets[offsets[v]] to targets[offsets[v + 1] - 1] and their weights
+	 * are at same positions in weights.
+	 * @param offsets array of vertexCount + 1 positions in targets
+	 * @param targets
+	 * @param weights null for unweighted graph
+	 * @param directed
+	 * @return graph source
+	 */
+	static GraphSource csr(int[] offsets, int[] targets, double[] weights, boolean directed) {
+		return new ArrayGraphSources.Csr(offsets, targets, weights, directed);
+	}
+
+	/**
+	 * Receives edge from vertex, to vertex and edge weight.
+	 */
+	@FunctionalInterface
+	interface EdgeConsumer {
+		void accept(int from, int to, double weight);
+	}
+}
@@ -30,60 +30,103 @@ package GraphViz;
 ******************************************************************************
 */
 import java.awt.Desktop;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.net.URISyntaxException;
-import java.net.URL;
-import java.net.URLEncoder;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.URI;
+import java.security.MessageDigest;
 import java.lang.reflect.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
 public class GraphViz
 {
     private final static String OS_NAME = System.getProperty("os.name").replaceAll("\\s","");
-    private static final String GRAPH_VIZ_INSTALLATION_DIR = "Graphviz";
-    private static final String GRAPH_VIZ_EXE_PATH = "/bin/dot.exe";
     private static final String GRAPH_COUNTER = "/info/counter.txt";
     private static final String DOT_DIR = "/dot";
     private static final String INFO_DIR = "/info";
+    private static final String CACHE_DIR = "/cache";
+    private static final String COMPRESSED_DOT_SUFFIX = ".gz";
+    private static final String ARCHIVE_NAME = "archive";
     private static final String SPACING = "    ";
-    private static final String GRAPH_DRAWING_ONLINE_SERVICE = "https://image-charts.com/chart?cht=gv:dot&chl=";
-    private static final Set<String> ALLOWED_FILE_TYPES = Set.of("gif", "png", "jpg", "svg");
-    //#############################################################
-    //GRAPH METHODS
-    private String numberOfVerticesMethodName = "V";
-    private String adjacentVerticesMethodName = "adj";
-    //#############################################################
-    //#############################################################
-    //EDGE WEIGHTED GRAPH METHODS
-    private String edgeMethodName = "edges";
-    private String edgeWeightMethodName = "weight";
-    private String edgeWeightedGraphEither = "either";
-    private String edgeWeightedGraphOther = "other";
-    private String edgeWeightedDigraphFrom = "from";
-    private String edgeWeightedDigraphTo = "to";
-    //#############################################################
-    //#############################################################
-    //GRAPH CLASS NAMES
-    private String graphClassName = "Graph";
-    private String digraphClassName = "Digraph";
-    private String edgeWeightedGraphClassName = "EdgeWeightedGraph";
-    private String edgeWeightedDigraphClassName = "EdgeWeightedDigraph";
-    //#############################################################
-    private String fileType = "png";
+    private static final int DOT_BUFFER_SIZE = 64 * 1024;
+    private static final int PARALLEL_MIN_CHUNK = 1024;
+    /** edges kept when layout of graph does not finish before render timeout */
+    private static final int REDUCED_EDGES = 10_000;
+    /** longest list of dot files given to one dot run, Windows allows 32K characters */
+    private static final int MAX_BATCH_COMMAND_LENGTH = 30_000;
+    private static final String DIFF_ADDED = "color=green";
+    private static final String DIFF_REMOVED = "color=red,style=dashed";
+    private static final long BROWSER_SERVER_IDLE_MILLIS = 5 * 60 * 1000;
+    /** output of GraphViz with positions of vertices in inches */
+    private static final String PLAIN = "plain";
+    /** groups of components per thread, smaller groups keep layout of each dot run cheap */
+    private static final int COMPONENT_GROUPS_PER_THREAD = 4;
+    private static final ExecutorService COMPONENT_LAYOUTS = Executors.newCachedThreadPool(r -> {
+    	Thread t = new Thread(r, "GraphViz-component-layout");
+    	t.setDaemon(true);
+    	return t;
+    });
+    /** root directories whose files were initialized in this JVM */
+    private static final Set<String> STRUCTURED_DIRS = ConcurrentHashMap.newKeySet();
     
+    private volatile GraphVizConfig config;
     private String rootDir;
-    private String executable;
+    private volatile GraphVizInstallation installation;
     
-    private boolean graphVizExists;
+    private volatile RenderCache renderCache;
+    private volatile GraphVizListener listener = GraphVizListener.NONE;
+    private volatile DotArchive dotArchive;
+    /** layout engines chosen for dot files written but not yet rendered */
+    private final Map<String, LayoutEngine> dotLayouts;
+    private GraphVizServer browserServer;
+    
+    private volatile GraphReduction reduction;
+    private final WeakIdentityMap<Object, GraphSnapshot> snapshots;
+    private final WeakIdentityMap<Object, LayoutPositions> layouts;
 
     public GraphViz() {
-        this(null, null);
+        this(GraphVizConfig.builder().build());
     }
     
     public GraphViz(String executable) {
@@ -91,62 +134,52 @@ public class GraphViz
     }
     
     public GraphViz(String executable, String rootDir) {
-    	this.executable = executable;
-    	this.rootDir = rootDir;
-    	init();
-    }
-	
-    public void init() {
-    	if (OS_NAME.contains("Windows")) {
-    		windowsSetup();
-        } else if (OS_NAME.equals("MacOSX")) {
-        	linuxSetup();
-        } else if (OS_NAME.equals("Linux")) {
-        	macOSSetup();
-        }
-    	
-    	if(executable == null) {
-    		graphVizExists = false;
-    	} else {
-    		File exe = new File(executable);
-        	if(!exe.exists()) {
-        		graphVizExists = false;
-        	}
-    	}
-        initStructure();
+    	this(GraphVizConfig.builder().executable(executable).rootDir(rootDir).build());
     }
     
-    private void windowsSetup() {
-    	if(rootDir == null) {
-    		rootDir = "C:/GraphViz";
-    	}
-    	
-        if(executable == null) {
-			executable = graphVizWindowsDefaultSearch();
-			if(executable == null) {
-				
-			}
-		}
+    /**
+     * Creates GraphViz with config. GraphViz whose setters are not called
+     * after it is created can be shared by any number of threads, and
+     * RenderOptions change settings of single render.
+     * @param config
+     */
+    public GraphViz(GraphVizConfig config) {
+    	this.config = config;
+    	this.rootDir = config.rootDir();
+    	this.dotLayouts = new ConcurrentHashMap<>();
+    	this.snapshots = new WeakIdentityMap<>();
+    	this.layouts = new WeakIdentityMap<>();
+    	init();
     }
     
-    private void linuxSetup() {
-    	if(rootDir == null) {
-    		rootDir = System.getProperty("user.home")+"/GraphViz";
-    	}
-    	
-    	if(executable == null) {
-    		executable = "dot";
-    	}
+    /**
+     * GraphViz with other config that shares directories, caches, listener
+     * and kept graph state of shared GraphViz, used for single render.
+     * @param shared
+     * @param config
+     */
+    private GraphViz(GraphViz shared, GraphVizConfig config) {
+    	this.config = config;
+    	this.installation = shared.installation;
+    	this.rootDir = shared.rootDir;
+    	this.renderCache = shared.renderCache;
+    	this.listener = shared.listener;
+    	this.dotArchive = shared.dotArchive;
+    	this.reduction = shared.reduction;
+    	this.dotLayouts = shared.dotLayouts;
+    	this.snapshots = shared.snapshots;
+    	this.layouts = shared.layouts;
     }
-    
-    private void macOSSetup() {
+	
+    /**
+     * Resolves root directory. GraphViz executable is probed and directories
+     * are created when first image is drawn, so creating GraphViz is cheap.
+     */
+    public void init() {
     	if(rootDir == null) {
-    		rootDir = System.getProperty("user.home")+"/GraphViz";
-    	}
-    	
-    	if(executable == null) {
-    		executable = "dot";
+    		rootDir = OS_NAME.contains("Windows") ? "C:/GraphViz" : System.getProperty("user.home")+"/GraphViz";
     	}
+    	update(b -> b.rootDir(rootDir));
     }
     
     /**
@@ -174,132 +207,1568 @@ public class GraphViz
 				e.printStackTrace();
 			}
         }
+        STRUCTURED_DIRS.add(rootDir);
     }
     
-	/**
-	 * Search expected locations on windows where GraphViz could be located
-	 * @return
-	 * @throws FileNotFoundException
-	 */
-    private String graphVizWindowsDefaultSearch() {
-    	String[] programFilesLocations = {"C:/Program Files (x86)", 
-    			"C:/Program Files"};
-    	String path = null;
-    	for(String s : programFilesLocations) {
-    		path = findGraphViz(s);
-    		if(path != null) {
-    			return path;
-    		}
+    /**
+     * Initializes files on filesystem once per root directory, before
+     * first file is written there.
+     */
+    private void ensureStructure() {
+    	if(!STRUCTURED_DIRS.contains(rootDir)) {
+    		initStructure();
     	}
-    	
-    	return null;
     }
     
     /**
-     * Check files and directories in provided path and searches for directory
-     * that has GraphViz in its name.
-     * @param String path
-     * @return
+     * GraphViz installation, probed on first call in JVM and again
+     * after a while if GraphViz was not found.
+     * @return installation
      */
-	private String findGraphViz(String path) {
-		File[] files = new File(path).listFiles();
-		if(files == null) {
-			return null;
-		}
-		
-		for(File f : files) {
-			if(f.isDirectory() && f.getName().contains(GRAPH_VIZ_INSTALLATION_DIR)) {
-				return path+"/"+f.getName()+GRAPH_VIZ_EXE_PATH;
-			}
-		}
-		
-		return null;
-	}
+    private GraphVizInstallation installation() {
+    	GraphVizInstallation i = installation;
+    	if(i == null || i.isStale()) {
+    		i = GraphVizInstallation.of(config.executable());
+    		installation = i;
+    	}
+    	return i;
+    }
+    
+    /**
+     * @return working GraphViz executable, null if it was not found
+     */
+    private String executable() {
+    	return installation().executable();
+    }
+    
+    /**
+     * @return true if GraphViz dot answered when it was probed
+     */
+    public boolean isGraphVizInstalled() {
+    	return executable() != null;
+    }
+    
+    /**
+     * @return version of GraphViz, null if it was not found
+     */
+    public String getGraphVizVersion() {
+    	return installation().version();
+    }
+    
+    /**
+     * @return output formats GraphViz can write, empty if GraphViz
+     * was not found or did not list them
+     */
+    public Set<String> getSupportedFormats() {
+    	return installation().formats();
+    }
+    
+    /**
+     * Rejects image type GraphViz can't write before any file is written,
+     * called when image is created so setters do not start GraphViz.
+     * @param type
+     * @throws IllegalArgumentException if type is not supported
+     */
+    private void checkSupported(String type) {
+    	if(!usesJavaRenderer() && !installation().supports(type)) {
+    		throw new IllegalArgumentException("Image type "+type+" is not supported by "+executable()
+    			+" "+installation().version());
+    	}
+    }
+    
+    /**
+     * Rejects configured image type GraphViz can't write.
+     * @throws IllegalArgumentException if type is not supported
+     */
+    void checkSupported() {
+    	checkSupported(config.fileType());
+    }
 	
 	/**
 	 * Creates graph image, graph should be compatible
 	 * with definition and implementation of graph used
 	 * on Data Structures and Algorithms 3 course.
 	 * @param Object graph
+	 * @return result with exit code and errors of dot
 	 */
-    public void createGraphImage(String fileName, Object graph) {
-    	String dotString = toDot(graph);
+    public RenderResult createGraphImage(String fileName, Object graph) {
+    	if(reusesLayout()) {
+    		String type = config.fileType();
+    		return createGraphImage(fileName, graph, Collections.singleton(type)).get(type);
+    	}
+    	if(usesComponentLayout()) {
+    		return createComponentImage(fileName, graph);
+    	}
+    	return createGraphImage(fileName, new GraphDot(graph));
+    }
+    
+    private RenderResult createGraphImage(String fileName, DotSource source) {
+    	checkSupported(config.fileType());
         int dotId;
         try {
-        	dotId = writeDotToFile(fileName, dotString);
+        	dotId = writeDotToFile(fileName, source);
             
             if (dotId != -1) {
-            	writeImg(fileName, dotId);
+            	return writeImg(fileName, dotId);
             }
             
         } catch (java.io.IOException e) {
         	e.printStackTrace();
         }
+        return RenderResult.failed(null, "dot file was not written");
     }
     
-    public void createGraphImage(Object graph) {
-    	createGraphImage(null, graph);
+    public RenderResult createGraphImage(Object graph) {
+    	return createGraphImage(null, graph);
     }
     
     /**
 	 * Creates graph image from string. String should be
 	 * compatible with dot format.
 	 * @param String dotSource
+	 * @return result with exit code and errors of dot
 	 */
-    public void createGraphImage(String fileName, String dotString) {
-    	int dotId;
-        try {
-        	dotId = writeDotToFile(fileName, dotString);
-            
-            if (dotId != -1) {
-            	writeImg(fileName, dotId);
-            }
-            
-        } catch (java.io.IOException e) {
-        	e.printStackTrace();
-        }
+    public RenderResult createGraphImage(String fileName, String dotString) {
+    	return createGraphImage(fileName, new StringDot(dotString));
     }
     
-    public void createGraphImage(String dotString) {
-    	createGraphImage(null, dotString);
+    public RenderResult createGraphImage(String dotString) {
+    	return createGraphImage(null, dotString);
+    }
+    
+    /**
+     * Creates images of graph in several types from one layout. Dot is
+     * written once and one dot run writes all images, so PNG and SVG
+     * of same graph cost one layout.
+     * @param fileName name of images without type, null for next free id
+     * @param graph
+     * @param types gif, png, jpg or svg
+     * @return results by type
+     */
+    public Map<String, RenderResult> createGraphImage(String fileName, Object graph, Set<String> types) {
+    	if(reusesLayout()) {
+    		LayoutPositions positions = layouts.get(graph);
+    		return createGraphImage(fileName, new GraphDot(graph, positions != null ? positions : LayoutPositions.empty()),
+    				types);
+    	}
+    	return createGraphImage(fileName, new GraphDot(graph), types);
+    }
+    
+    /**
+     * Creates images of dot string in several types from one layout.
+     * @param fileName name of images without type, null for next free id
+     * @param dotString
+     * @param types gif, png, jpg or svg
+     * @return results by type
+     */
+    public Map<String, RenderResult> createGraphImage(String fileName, String dotString, Set<String> types) {
+    	return createGraphImage(fileName, new StringDot(dotString), types);
+    }
+    
+    private Map<String, RenderResult> createGraphImage(String fileName, DotSource source, Set<String> types) {
+    	if(types.isEmpty()) {
+    		throw new IllegalArgumentException("At least one image type is required");
+    	}
+    	for(String type : types) {
+    		GraphVizConfig.checkFileType(type);
+    		checkSupported(type);
+    	}
+    	int dotId = -1;
+    	try {
+    		dotId = writeDotToFile(fileName, source);
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    	}
+    	if(dotId == -1) {
+    		Map<String, RenderResult> failed = new LinkedHashMap<>();
+    		for(String type : types) {
+    			failed.put(type, RenderResult.failed(null, "dot file was not written"));
+    		}
+    		return failed;
+    	}
+    	warnIfGraphVizMissing();
+    	String dotFileLocation = createDotFileName(fileName, dotId);
+    	Map<String, String> images = new LinkedHashMap<>();
+    	for(String type : types) {
+    		images.put(type, createDrawingFileName(fileName, dotId, type));
+    	}
+    	LayoutEngine engine = layoutOf(dotFileLocation);
+    	GraphDot pinned = source instanceof GraphDot && ((GraphDot) source).pins != null ? (GraphDot) source : null;
+    	if(pinned == null) {
+    		return writeImgs(dotFileLocation, images, engine, null);
+    	}
+    	
+    	//positions of this layout are read from plain output of same dot run
+    	String plainFileLocation = dotFileLocation+"."+PLAIN;
+    	images.put(PLAIN, plainFileLocation);
+    	Map<String, RenderResult> results;
+    	if(pinned.pins.isEmpty()) {
+    		results = writeImgs(dotFileLocation, images, engine, null);
+    	} else {
+    		//-n keeps all positions as they are, -s reads them in points and places new vertices
+    		results = writeImgs(dotFileLocation, images, LayoutEngine.NEATO, pinned.allPinned ? "-n" : "-s");
+    	}
+    	if(results.remove(PLAIN).isSuccess()) {
+    		readLayout(pinned.graph, plainFileLocation);
+    	}
+    	return results;
+    }
+    
+    /**
+     * Creates image of graph whose connected components, weakly connected
+     * for digraphs, are laid out by parallel dot runs. Components are found
+     * by union-find while dot of whole graph is written, which also keeps
+     * written edges, so graph is read once. Components are split in groups
+     * of similar size, each group is laid out by its own dot. Groups
+     * are packed in one image by gvpack when it is installed with dot,
+     * otherwise each group is drawn as page of image and result holds
+     * location of index page that shows all pages.
+     * @param fileName
+     * @param graph
+     * @return result with location of image or index page
+     */
+    private RenderResult createComponentImage(String fileName, Object graph) {
+    	checkSupported(config.fileType());
+    	GraphDot source = new GraphDot(graph, null, true);
+    	int dotId = -1;
+    	try {
+    		dotId = writeDotToFile(fileName, source);
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    	}
+    	if(dotId == -1) {
+    		return RenderResult.failed(null, "dot file was not written");
+    	}
+    	warnIfGraphVizMissing();
+    	String dotFileLocation = createDotFileName(fileName, dotId);
+    	String imgFileLocation = createDrawingFileName(fileName, dotId);
+    	LayoutEngine engine = layoutOf(dotFileLocation);
+    	GraphComponents components = source.components;
+    	int threads = Runtime.getRuntime().availableProcessors();
+    	int groups = components != null ? components.partition(threads * COMPONENT_GROUPS_PER_THREAD) : 0;
+    	//cached images are kept by dot of whole graph
+    	if(groups < 2 || usesJavaRenderer() || renderCache != null) {
+    		return writeImg(dotFileLocation, imgFileLocation, engine);
+    	}
+    	
+    	RenderResult result;
+    	try {
+    		result = layoutComponents(components, groups, imgFileLocation, threads);
+    	} catch (IOException e) {
+    		System.err.println("Warning: components of "+dotFileLocation+" could not be laid out separately, "
+    				+ "graph is laid out at once: "+e.getMessage());
+    		return writeImg(dotFileLocation, imgFileLocation, engine);
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		return RenderResult.failed(imgFileLocation, "interrupted");
+    	}
+    	if(result.isSuccess()) {
+    		imageCreated(dotFileLocation, result.imageFile());
+    	} else {
+    		System.err.println("Error: "+executable()+" could not create image from components of dot file "
+    				+ dotFileLocation+" ("+result+")");
+    	}
+    	return result;
+    }
+    
+    /**
+     * Writes dot of each group of components from its kept edges to
+     * temporary directory and lays it out, at most one dot run per thread
+     * at once. Laid out groups are packed by gvpack, or drawn as pages
+     * when gvpack is not installed.
+     * @param components
+     * @param groups number of groups of components
+     * @param imgFileLocation
+     * @param threads
+     * @return result of packing or of last failed group
+     * @throws IOException if dot of group can't be written
+     * @throws InterruptedException
+     */
+    private RenderResult layoutComponents(GraphComponents components, int groups,
+    		String imgFileLocation, int threads) throws IOException, InterruptedException {
+    	String gvpack = installation().gvpack();
+    	String type = gvpack != null ? "dot" : config.fileType();
+    	LayoutEngine fixed = config.layoutEngine();
+    	Path dir = Files.createTempDirectory("graphviz-components");
+    	try {
+    		String[] outputs = new String[groups];
+    		RenderResult[] results = new RenderResult[groups];
+    		AtomicInteger next = new AtomicInteger();
+    		List<Future<Void>> workers = new ArrayList<>();
+    		for(int t = 0; t < Math.min(threads, groups); t++) {
+    			workers.add(COMPONENT_LAYOUTS.submit(() -> {
+    				for(int g = next.getAndIncrement(); g < groups; g = next.getAndIncrement()) {
+    					String dot = dir.resolve("component_"+g+".dot").toString();
+    					outputs[g] = gvpack != null ? dot+"."+type : componentPage(imgFileLocation, g);
+    					writeDot(Paths.get(dot), componentDot(components.group(g)));
+    					LayoutEngine engine = fixed != null ? fixed
+    							: LayoutEngine.forSize(components.vertexCount(g), components.edgeCount(g));
+    					results[g] = layoutComponent(dot, Collections.singletonMap(type, outputs[g]), engine);
+    				}
+    				return null;
+    			}));
+    		}
+    		try {
+    			for(Future<Void> worker : workers) {
+    				worker.get();
+    			}
+    		} catch (ExecutionException e) {
+    			if(e.getCause() instanceof IOException) {
+    				throw (IOException) e.getCause();
+    			}
+    			throw new IOException(e.getCause());
+    		} catch (InterruptedException e) {
+    			for(Future<Void> worker : workers) {
+    				worker.cancel(true);
+    			}
+    			throw e;
+    		}
+    		for(RenderResult result : results) {
+    			if(!result.isSuccess()) {
+    				return result.withImageFile(imgFileLocation);
+    			}
+    		}
+    		return gvpack != null ? packComponents(gvpack, dir, outputs, imgFileLocation)
+    				: writeComponentIndex(outputs, imgFileLocation);
+    	} finally {
+    		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+    			for(Path file : files) {
+    				Files.deleteIfExists(file);
+    			}
+    		}
+    		Files.deleteIfExists(dir);
+    	}
+    }
+    
+    /**
+     * Runs dot on dot file of group, with cheaper engine when it does
+     * not finish before render timeout.
+     * @param dotFileLocation
+     * @param images
+     * @param engine
+     * @return result of last dot run
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private RenderResult layoutComponent(String dotFileLocation, Map<String, String> images, LayoutEngine engine)
+    		throws IOException, InterruptedException {
+    	RenderResult result = null;
+    	for(LayoutEngine e = engine; e != null; e = e.cheaper()) {
+    		result = runDotOnFile(dotFileLocation, images, e, null);
+    		if(!result.timedOut()) {
+    			break;
+    		}
+    	}
+    	return result;
+    }
+    
+    /**
+     * Dot of group of components, edges of group were written to dot of
+     * whole graph, so reduction is already applied to them.
+     * @param group
+     * @return dot source
+     */
+    private DotSource componentDot(GraphSource group) {
+    	return channel -> {
+    		DotEncoder encoder = DotEncoder.acquire(channel, config.weightPrecision());
+    		try {
+    			encoder.writeAscii(group.isDirected() ? "digraph {\n" : "graph {\n");
+    			encoder.begin(group);
+    			group.forEachEdge(encoder);
+    			encoder.writeAscii("}");
+    			encoder.flush();
+    		} catch (UncheckedIOException e) {
+    			throw e.getCause();
+    		} finally {
+    			encoder.release();
+    		}
+    	};
+    }
+    
+    /**
+     * Packs laid out groups with gvpack and draws packed graph with
+     * neato -n2, which keeps positions of packed layout.
+     * @param gvpack
+     * @param dir temporary directory
+     * @param layouts laid out groups in dot format
+     * @param imgFileLocation
+     * @return result of last run
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private RenderResult packComponents(String gvpack, Path dir, String[] layouts, String imgFileLocation)
+    		throws IOException, InterruptedException {
+    	String packed = dir.resolve("packed.gv").toString();
+    	List<String> args = new ArrayList<>();
+    	args.add(gvpack);
+    	args.add("-o");
+    	args.add(packed);
+    	Collections.addAll(args, layouts);
+    	ProcessBuilder pb = new ProcessBuilder(args);
+    	pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+    	long start = System.nanoTime();
+    	Process p = pb.start();
+    	long started = System.nanoTime();
+    	listener.phase(GraphVizListener.Phase.PROCESS_START, started - start);
+    	p.getOutputStream().close();
+    	CompletableFuture<String> errors = ProcessStreams.capture(p.getErrorStream(), ProcessStreams.MAX_ERROR_BYTES);
+    	RenderResult result = finish(p, started, LayoutEngine.NEATO, errors, imgFileLocation);
+    	if(!result.isSuccess()) {
+    		return result;
+    	}
+    	return runDotOnFile(packed, Collections.singletonMap(config.fileType(), imgFileLocation), LayoutEngine.NEATO, "-n2");
+    }
+    
+    /**
+     * Writes index page that shows pages of groups in order.
+     * @param pages locations of page images
+     * @param imgFileLocation
+     * @return result with location of index page
+     * @throws IOException
+     */
+    private RenderResult writeComponentIndex(String[] pages, String imgFileLocation) throws IOException {
+    	String index = componentBase(imgFileLocation)+".html";
+    	StringBuilder sb = new StringBuilder("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>")
+    			.append(JavaRenderer.escape(new File(imgFileLocation).getName())).append("</title></head><body>\n");
+    	for(String page : pages) {
+    		sb.append("<p><img src=\"").append(JavaRenderer.escape(new File(page).getName())).append("\"></p>\n");
+    	}
+    	sb.append("</body></html>\n");
+    	Files.write(Paths.get(index), sb.toString().getBytes(StandardCharsets.UTF_8));
+    	return new RenderResult(index, 0, false, null);
+    }
+    
+    /**
+     * @param imgFileLocation
+     * @param g group
+     * @return location of page image of group, numbered from 1
+     */
+    private String componentPage(String imgFileLocation, int g) {
+    	return componentBase(imgFileLocation)+"_"+(g + 1)+"."+config.fileType();
+    }
+    
+    private String componentBase(String imgFileLocation) {
+    	String suffix = "."+config.fileType();
+    	return imgFileLocation.endsWith(suffix) ? imgFileLocation.substring(0, imgFileLocation.length() - suffix.length())
+    			: imgFileLocation;
+    }
+    
+    /**
+     * @return true if positions of graph are kept between renders, which
+     * needs GraphViz that writes plain output
+     */
+    private boolean reusesLayout() {
+    	return config.layoutReuse() && !usesJavaRenderer() && installation().supports(PLAIN);
+    }
+    
+    private boolean usesComponentLayout() {
+    	return config.componentLayout() && !usesJavaRenderer();
+    }
+    
+    /**
+     * @return true if image of graph is drawn in several dot runs, with
+     * layout reuse or component layout, and not by writeImg from one dot file
+     */
+    boolean drawsInSteps() {
+    	return reusesLayout() || usesComponentLayout();
+    }
+    
+    /**
+     * Keeps positions of vertices from plain output for next render of graph.
+     * @param graph
+     * @param plainFileLocation deleted when it is read
+     */
+    private void readLayout(Object graph, String plainFileLocation) {
+    	Path plain = Paths.get(plainFileLocation);
+    	try {
+    		LayoutPositions positions;
+    		try (BufferedReader in = Files.newBufferedReader(plain, StandardCharsets.UTF_8)) {
+    			positions = LayoutPositions.readPlain(in);
+    		}
+    		layouts.merge(graph, positions, LayoutPositions::merge);
+    		Files.deleteIfExists(plain);
+    	} catch (IOException | RuntimeException e) {
+    		System.err.println("Warning: layout of graph could not be read from "+plainFileLocation
+    				+ ", next image is laid out from scratch");
+    		e.printStackTrace();
+    	}
+    }
+    
+    /**
+     * Creates images of many graphs with one dot process for each layout
+     * engine, so starting of dot is paid once per batch instead of once
+     * per graph. Values are graphs or dot strings and keys are file names
+     * same as in createGraphImage, null key gets next free id. Graphs that
+     * dot could not draw in batch are drawn one by one.
+     * @param graphs file names and graphs
+     * @return results by file name, in same order as graphs
+     */
+    public Map<String, RenderResult> createGraphImages(Map<String, ?> graphs) {
+    	checkSupported(config.fileType());
+    	warnIfGraphVizMissing();
+    	Map<String, RenderResult> results = new LinkedHashMap<>();
+    	Map<LayoutEngine, List<String[]>> batches = new EnumMap<>(LayoutEngine.class);
+    	boolean batched = !usesJavaRenderer() && renderCache == null;
+    	for(Map.Entry<String, ?> entry : graphs.entrySet()) {
+    		String fileName = entry.getKey();
+    		int dotId = -1;
+    		try {
+    			dotId = writeDotToFile(fileName, dotSource(entry.getValue()));
+    		} catch (IOException e) {
+    			e.printStackTrace();
+    		}
+    		if(dotId == -1) {
+    			results.put(fileName, RenderResult.failed(null, "dot file was not written"));
+    			continue;
+    		}
+    		String dotFileLocation = createDotFileName(fileName, dotId);
+    		String imgFileLocation = createDrawingFileName(fileName, dotId);
+    		LayoutEngine engine = layoutOf(dotFileLocation);
+    		if(batched && isPlainDotFile(dotFileLocation)) {
+    			//placeholder keeps order of results
+    			results.put(fileName, null);
+    			batches.computeIfAbsent(engine, e -> new ArrayList<>())
+    					.add(new String[] {fileName, dotFileLocation, imgFileLocation});
+    		} else {
+    			results.put(fileName, writeImg(dotFileLocation, imgFileLocation, engine));
+    		}
+    	}
+    	
+    	for(Map.Entry<LayoutEngine, List<String[]>> batch : batches.entrySet()) {
+    		LayoutEngine engine = batch.getKey();
+    		List<String> dotFiles = new ArrayList<>();
+    		for(String[] graph : batch.getValue()) {
+    			dotFiles.add(graph[1]);
+    		}
+    		String type = config.fileType();
+    		runDotBatch(engine, type, dotFiles);
+    		for(String[] graph : batch.getValue()) {
+    			RenderResult result;
+    			Path output = Paths.get(batchOutput(graph[1], type));
+    			try {
+    				if(Files.size(output) > 0) {
+    					Files.move(output, Paths.get(graph[2]), StandardCopyOption.REPLACE_EXISTING);
+    					result = new RenderResult(graph[2], 0, false, null);
+    					imageCreated(graph[1], graph[2]);
+    				} else {
+    					result = writeImg(graph[1], graph[2], engine);
+    				}
+    			} catch (IOException e) {
+    				//dot did not write image of this graph
+    				result = writeImg(graph[1], graph[2], engine);
+    			}
+    			results.put(graph[0], result);
+    		}
+    	}
+    	return results;
     }
 
     /**
      * Creates image based on dot file created
      * by using installed GraphViz.
      * @param dot
+     * @return result with location of image
      */
-    private void writeImg(String fileName, int dotId)
+    RenderResult writeImg(String fileName, int dotId)
     {
-    	if(!graphVizExists) {
+    	warnIfGraphVizMissing();
+    	String dotFileLocation = createDotFileName(fileName, dotId);
+    	return writeImg(dotFileLocation, createDrawingFileName(fileName, dotId), layoutOf(dotFileLocation));
+    }
+    
+    private void warnIfGraphVizMissing() {
+    	if(config.renderEngine() != RenderEngine.JAVA && installation().reportMissing()) {
     		System.out.println("GraphViz dot not found on expected location C:/Program Files/GraphViz... \n"
 				+ "or C:/Program Files (x86)/GraphViz... on Windows. On MacOSX and Linux it should be on path.\n"
 				+ "If you do not have GraphViz installed on your computer please\n"
 				+ "install GraphViz from https://graphviz.org/.\n\n"
 				+ "######### IMPORTANT #########\n"
-				+ "If for some reason you don't want to install GraphViz, dont use createGraphImage(...),\n"
-				+ "instead use method drawInBrowser(Object graph) or drawInBrowser(String dot).\n"
-				+ "Graphs that have more than 400 edges can't be drawn using browser methods.\n");
+				+ "If for some reason you don't want to install GraphViz, images are drawn by built-in\n"
+				+ "Java renderer, same as by drawInBrowser(Object graph) or drawInBrowser(String dot).\n");
     	}
-    	
-    	String dotFileLocation = createDotFileName(fileName, dotId);
-    	String imgFileLocation = createDrawingFileName(fileName, dotId);
+    }
+    
+    /**
+     * Layout engine chosen when dot file was written.
+     * @param dotFileLocation
+     * @return engine
+     */
+    private LayoutEngine layoutOf(String dotFileLocation) {
+    	LayoutEngine engine = dotLayouts.remove(dotFileLocation);
+    	if(engine == null) {
+    		LayoutEngine fixed = config.layoutEngine();
+    		engine = fixed != null ? fixed : LayoutEngine.DOT;
+    	}
+    	return engine;
+    }
+    
+    /**
+     * Creates image from dot file, through render cache if it is set.
+     * @param dotFileLocation
+     * @param imgFileLocation
+     * @param engine
+     * @return result with location of image
+     */
+    private RenderResult writeImg(String dotFileLocation, String imgFileLocation, LayoutEngine engine) {
+    	String type = config.fileType();
+    	return writeImgs(dotFileLocation, Collections.singletonMap(type, imgFileLocation), engine, null).get(type);
+    }
+    
+    /**
+     * Creates images of several types from dot file with one dot run,
+     * through render cache if it is set.
+     * @param dotFileLocation
+     * @param images locations of images by type
+     * @param engine
+     * @param layoutFlag option of neato for pinned positions, null for none
+     * @return results with location of image by type
+     */
+    private Map<String, RenderResult> writeImgs(String dotFileLocation, Map<String, String> images,
+    		LayoutEngine engine, String layoutFlag) {
+        RenderCache cache = renderCache;
+        RenderResult result;
+        if(cache != null) {
+        	try {
+        		result = writeCachedImgs(cache, dotFileLocation, images, engine, layoutFlag);
+        	} catch (IOException ioe) {
+        		System.err.println("Error: image for "+dotFileLocation+" could not be rendered or read from cache");
+        		ioe.printStackTrace();
+        		result = RenderResult.failed(null, ioe.getMessage());
+        	}
+        } else {
+        	result = runDot(dotFileLocation, images, engine, layoutFlag);
+        	if(!result.isSuccess()) {
+        		System.err.println("Error: "+executable()+" could not create image from dot file "+dotFileLocation
+        				+ " ("+result+")");
+        	}
+        }
         
+        Map<String, RenderResult> results = new LinkedHashMap<>();
+        for(Map.Entry<String, String> image : images.entrySet()) {
+        	results.put(image.getKey(), result.withImageFile(image.getValue()));
+        	if(result.isSuccess() && !PLAIN.equals(image.getKey())) {
+        		imageCreated(dotFileLocation, image.getValue());
+        	}
+        }
+        return results;
+    }
+    
+    private void imageCreated(String dotFileLocation, String imgFileLocation) {
+    	DotArchive archive = dotArchive;
+    	listener.imageCreated(archive != null ? archive.location(new File(dotFileLocation).getName())
+    			: dotFileLocation, imgFileLocation);
+    }
+    
+    /**
+     * Runs dot on dot file. When dot does not finish before render timeout
+     * it is killed and run again with cheaper layout engine, and after
+     * cheapest engine with graph reduced to sample of its edges.
+     * @param dotFileLocation
+     * @param images locations of images by type, all are written by same dot run
+     * @param engine layout engine tried first
+     * @param layoutFlag option of first engine, null for none
+     * @return result of last dot run
+     */
+    private RenderResult runDot(String dotFileLocation, Map<String, String> images, LayoutEngine engine,
+    		String layoutFlag) {
+    	String imgFileLocation = images.values().iterator().next();
         try {
-            Runtime rt = Runtime.getRuntime();
-            String[] args = { executable, "-T", fileType, "-o", imgFileLocation, dotFileLocation};
-            Process p = rt.exec(args);
-            p.waitFor();
+            if(usesJavaRenderer()) {
+            	renderInJava(openDot(dotFileLocation), images);
+            	return new RenderResult(imgFileLocation, 0, false, null);
+            }
+            for(LayoutEngine e = engine; e != null; e = e.cheaper()) {
+            	String flag = e == engine ? layoutFlag : null;
+            	RenderResult result = isPlainDotFile(dotFileLocation) ? runDotOnFile(dotFileLocation, images, e, flag)
+            			: runDot(openDot(dotFileLocation), images, e, flag);
+            	if(!result.timedOut()) {
+            		return result;
+            	}
+            }
+            System.err.println("Warning: layout of "+dotFileLocation+" did not finish in "+config.renderTimeoutMillis()
+            		+ " ms, image is drawn from sample of "+REDUCED_EDGES+" edges");
+            return runDot(new ByteArrayInputStream(reducedDot(openDot(dotFileLocation))), images,
+            		LayoutEngine.SFDP, null).asPartial();
         } catch (IOException ioe) {
             System.err.println("Error: in I/O processing of tempfile in dir " + rootDir + "\n or in calling external command");
             ioe.printStackTrace();
+            return RenderResult.failed(imgFileLocation, ioe.getMessage());
         } catch (InterruptedException ie) {
             System.err.println("Error: the execution of the external program was interrupted");
             ie.printStackTrace();
+            return RenderResult.failed(imgFileLocation, "interrupted");
         }
-        
-        System.out.println("From dot file "+dotFileLocation+" graph "
-        		+ "image successfully created in "+imgFileLocation);
+    }
+    
+    /**
+     * Runs dot once on plain dot file.
+     * @param dotFileLocation
+     * @param images locations of images by type
+     * @param engine
+     * @param layoutFlag null for none
+     * @return result of dot run
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private RenderResult runDotOnFile(String dotFileLocation, Map<String, String> images, LayoutEngine engine,
+    		String layoutFlag) throws IOException, InterruptedException {
+    	String imgFileLocation = images.values().iterator().next();
+    	List<String> args = command(engine, images, layoutFlag);
+    	args.add(dotFileLocation);
+    	ProcessBuilder pb = new ProcessBuilder(args);
+    	pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+    	long start = System.nanoTime();
+    	Process p;
+    	try {
+    		p = pb.start();
+    	} catch (IOException e) {
+    		warnGraphVizNotStarted(e);
+    		renderInJava(openDot(dotFileLocation), images);
+    		return new RenderResult(imgFileLocation, 0, false, null);
+    	}
+    	long started = System.nanoTime();
+    	listener.phase(GraphVizListener.Phase.PROCESS_START, started - start);
+    	p.getOutputStream().close();
+    	CompletableFuture<String> errors = ProcessStreams.capture(p.getErrorStream(), ProcessStreams.MAX_ERROR_BYTES);
+    	return finish(p, started, engine, errors, imgFileLocation);
+    }
+    
+    /**
+     * Runs dot with dot written to its standard input, so compressed dot
+     * is decompressed on the fly and never written to disk uncompressed.
+     * @param dot closed when it is read
+     * @param images locations of images by type
+     * @param engine
+     * @param layoutFlag null for none
+     * @return result of dot run
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private RenderResult runDot(InputStream dot, Map<String, String> images, LayoutEngine engine,
+    		String layoutFlag) throws IOException, InterruptedException {
+    	String imgFileLocation = images.values().iterator().next();
+    	List<String> args = command(engine, images, layoutFlag);
+    	ProcessBuilder pb = new ProcessBuilder(args);
+    	pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+    	long start = System.nanoTime();
+    	Process p;
+    	try {
+    		p = pb.start();
+    	} catch (IOException e) {
+    		warnGraphVizNotStarted(e);
+    		renderInJava(dot, images);
+    		return new RenderResult(imgFileLocation, 0, false, null);
+    	}
+    	long started = System.nanoTime();
+    	listener.phase(GraphVizListener.Phase.PROCESS_START, started - start);
+    	CompletableFuture<String> errors = ProcessStreams.capture(p.getErrorStream(), ProcessStreams.MAX_ERROR_BYTES);
+    	
+    	IOException writeFailure = null;
+    	try (InputStream in = dot; OutputStream stdin = p.getOutputStream()) {
+    		in.transferTo(stdin);
+    	} catch (IOException e) {
+    		//dot closed its input, exit code tells why
+    		writeFailure = e;
+    	}
+    	RenderResult result = finish(p, started, engine, errors, imgFileLocation);
+    	if(result.isSuccess() && writeFailure != null) {
+    		throw writeFailure;
+    	}
+    	return result;
+    }
+    
+    /**
+     * Waits for dot to exit and for rest of its standard error.
+     * @param p
+     * @param started
+     * @param engine
+     * @param errors reader of standard error
+     * @param imgFileLocation
+     * @return result of dot run
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private RenderResult finish(Process p, long started, LayoutEngine engine, CompletableFuture<String> errors,
+    		String imgFileLocation) throws IOException, InterruptedException {
+    	GraphVizListener l = listener;
+    	boolean timedOut = !waitFor(p, started, engine);
+    	l.phase(GraphVizListener.Phase.LAYOUT, System.nanoTime() - started);
+    	String stderr = ProcessStreams.await(errors);
+    	if(!timedOut) {
+    		l.processExited(p.exitValue());
+    	}
+    	return new RenderResult(imgFileLocation, p.exitValue(), timedOut, stderr);
+    }
+    
+    /**
+     * Runs one dot with -O on many plain dot files, dot writes image of
+     * each file next to it as dotfile.type. Files are split into several
+     * runs when command line would grow too long. Images of batch that
+     * did not finish before render timeout are deleted.
+     * @param engine
+     * @param type of images
+     * @param dotFiles
+     */
+    private void runDotBatch(LayoutEngine engine, String type, List<String> dotFiles) {
+    	int from = 0;
+    	while(from < dotFiles.size()) {
+    		List<String> args = command(engine, type);
+    		args.add("-O");
+    		int length = 0;
+    		int to = from;
+    		//at least one file is taken even if its name is too long
+    		while(to < dotFiles.size() && (to == from || length + dotFiles.get(to).length() < MAX_BATCH_COMMAND_LENGTH)) {
+    			length += dotFiles.get(to).length() + 1;
+    			to++;
+    		}
+    		List<String> chunk = dotFiles.subList(from, to);
+    		from = to;
+    		try {
+    			for(String dot : chunk) {
+    				Files.deleteIfExists(Paths.get(batchOutput(dot, type)));
+    			}
+    			args.addAll(chunk);
+    			ProcessBuilder pb = new ProcessBuilder(args);
+    			pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+    			long start = System.nanoTime();
+    			Process p = pb.start();
+    			long started = System.nanoTime();
+    			listener.phase(GraphVizListener.Phase.PROCESS_START, started - start);
+    			p.getOutputStream().close();
+    			CompletableFuture<String> errors = ProcessStreams.capture(p.getErrorStream(), ProcessStreams.MAX_ERROR_BYTES);
+    			RenderResult result = finish(p, started, engine, errors, null);
+    			if(result.timedOut()) {
+    				//last image may be partly written
+    				for(String dot : chunk) {
+    					Files.deleteIfExists(Paths.get(batchOutput(dot, type)));
+    				}
+    			} else if(!result.isSuccess()) {
+    				//graphs without image are drawn again one by one to get their errors
+    				System.err.println("Warning: "+executable()+" failed on batch of "+chunk.size()+" graphs ("+result+")");
+    			}
+    		} catch (IOException e) {
+    			System.err.println("Warning: batch of "+chunk.size()+" graphs could not be drawn with "+executable()
+    					+ ", graphs are drawn one by one: "+e.getMessage());
+    		} catch (InterruptedException e) {
+    			Thread.currentThread().interrupt();
+    			return;
+    		}
+    	}
+    }
+    
+    private static String batchOutput(String dotFile, String type) {
+    	return dotFile+"."+type;
+    }
+    
+    /**
+     * Command that writes image of each type to its location, all
+     * images are drawn from one layout.
+     * @param engine
+     * @param images locations of images by type
+     * @param layoutFlag option of engine, null for none
+     * @return executable and its arguments without dot file
+     */
+    private List<String> command(LayoutEngine engine, Map<String, String> images, String layoutFlag) {
+    	List<String> args = null;
+    	for(Map.Entry<String, String> image : images.entrySet()) {
+    		if(args == null) {
+    			args = command(engine, image.getKey());
+    		} else {
+    			args.add("-T"+image.getKey());
+    		}
+    		args.add("-o");
+    		args.add(image.getValue());
+    	}
+    	if(layoutFlag != null) {
+    		args.add(layoutFlag);
+    	}
+    	return args;
+    }
+    
+    /**
+     * Command that runs GraphViz with layout engine, -K is left out
+     * when executable is that engine.
+     * @param engine
+     * @return executable and its arguments
+     */
+    private List<String> command(LayoutEngine engine, String type) {
+    	List<String> args = new ArrayList<>();
+    	args.add(executable());
+    	String name = new File(executable()).getName();
+    	if(!name.equals(engine.command()) && !name.equals(engine.command()+".exe")) {
+    		args.add("-K"+engine.command());
+    	}
+    	args.add("-T"+type);
+    	return args;
+    }
+    
+    /**
+     * Waits for dot until render timeout passes from its start, then kills it.
+     * @param p
+     * @param started
+     * @param engine
+     * @return false if dot was killed
+     * @throws InterruptedException
+     */
+    private boolean waitFor(Process p, long started, LayoutEngine engine) throws InterruptedException {
+    	long timeout = config.renderTimeoutMillis();
+    	try {
+    		if(timeout <= 0) {
+    			p.waitFor();
+    			return true;
+    		}
+    		long left = TimeUnit.MILLISECONDS.toNanos(timeout) - (System.nanoTime() - started);
+    		if(p.waitFor(Math.max(0, left), TimeUnit.NANOSECONDS)) {
+    			return true;
+    		}
+    	} catch (InterruptedException e) {
+    		p.destroyForcibly();
+    		throw e;
+    	}
+    	p.destroyForcibly().waitFor();
+    	listener.timedOut(engine);
+    	LayoutEngine next = engine.cheaper();
+    	System.err.println("Warning: "+engine.command()+" layout did not finish in "+timeout+" ms and was stopped"
+    			+ (next != null ? ", retrying with "+next.command() : ""));
+    	return false;
+    }
+    
+    /**
+     * Reads dot and writes sample of its edges as new dot, used when even
+     * cheapest layout engine can't lay out whole graph before timeout.
+     * @param dot closed when it is read
+     * @return reduced dot
+     * @throws IOException
+     */
+    private static byte[] reducedDot(InputStream dot) throws IOException {
+    	DotGraph graph;
+    	try (BufferedReader in = new BufferedReader(new InputStreamReader(dot, StandardCharsets.UTF_8), DOT_BUFFER_SIZE)) {
+    		graph = DotGraph.read(in);
+    	}
+    	StringBuilder sb = new StringBuilder();
+    	graph.sample(REDUCED_EDGES, 0).writeTo(sb);
+    	return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Layout engine set by setLayoutEngine, or engine chosen by number of
+     * vertices and edges counted while dot was written. Graph that was not
+     * written yet is sized by vertices it declares.
+     * @param source
+     * @return engine
+     */
+    private LayoutEngine selectLayout(DotSource source) {
+    	LayoutEngine fixed = config.layoutEngine();
+    	if(fixed != null) {
+    		return fixed;
+    	}
+    	int vertices = source.vertexCount();
+    	long edges = source.edgeCount();
+    	if(vertices < 0 && edges < 0) {
+    		vertices = source.declaredVertexCount();
+    	}
+    	return LayoutEngine.forSize(vertices, edges);
+    }
+    
+    /**
+     * Copies images from render cache to image locations, dot is run
+     * only if image of some type for same dot file is not cached, and
+     * then it draws images of all types.
+     * @param cache
+     * @param dotFileLocation
+     * @param images locations of images by type
+     * @param engine
+     * @param layoutFlag null for none
+     * @return result of dot run, or successful result when images were cached
+     * @throws IOException
+     */
+    private RenderResult writeCachedImgs(RenderCache cache, String dotFileLocation, Map<String, String> images,
+    		LayoutEngine engine, String layoutFlag) throws IOException {
+    	long start = System.nanoTime();
+    	MessageDigest md;
+    	if(isPlainDotFile(dotFileLocation)) {
+    		md = RenderCache.digest(Paths.get(dotFileLocation));
+    	} else {
+    		try (InputStream dot = openDot(dotFileLocation)) {
+    			md = RenderCache.digest(dot);
+    		}
+    	}
+    	String layoutEngine = layoutEngine(engine)+(layoutFlag != null ? " "+layoutFlag : "");
+    	Map<String, String> keys = RenderCache.keys(md, images.keySet(), layoutEngine);
+    	long[] rendered = {0};
+    	RenderResult[] result = {new RenderResult(images.values().iterator().next(), 0, false, null)};
+    	for(Map.Entry<String, String> key : keys.entrySet()) {
+    		Path img = Paths.get(images.get(key.getKey()));
+    		boolean[] loaded = {false};
+    		byte[] image = cache.get(key.getValue(), () -> {
+    			loaded[0] = true;
+    			if(rendered[0] == 0) {
+    				rendered[0] = System.nanoTime();
+    				result[0] = runDot(dotFileLocation, images, engine, layoutFlag);
+    			}
+    			if(!result[0].isSuccess()) {
+    				throw new IOException(executable()+" failed to render "+dotFileLocation+" ("+result[0]+")");
+    			}
+    			if(result[0].isPartial()) {
+    				//image of sample is not kept, so retry can draw whole graph
+    				throw new RenderCache.UncachedImage(Files.readAllBytes(img));
+    			}
+    			return Files.readAllBytes(img);
+    		});
+    		//image is already in place if dot was run for other type
+    		if(!loaded[0] && rendered[0] == 0) {
+    			Files.write(img, image);
+    		}
+    	}
+    	listener.phase(GraphVizListener.Phase.CACHE_LOOKUP, (rendered[0] == 0 ? System.nanoTime() : rendered[0]) - start);
+    	return result[0];
+    }
+    
+    /**
+     * Name of layout engine used in render cache keys.
+     * @param engine
+     * @return engine
+     */
+    private String layoutEngine(LayoutEngine engine) {
+    	if(usesJavaRenderer()) {
+    		return "java";
+    	}
+    	List<String> args = command(engine, config.fileType());
+    	//executable and -K if engine is given by it
+    	return new File(executable()).getName()+(args.get(1).startsWith("-K") ? " "+args.get(1) : "");
+    }
+    
+    /**
+     * Java renderer is used when it is selected or when there
+     * is no GraphViz executable.
+     * @return true if images are drawn by Java renderer
+     */
+    private boolean usesJavaRenderer() {
+    	return config.renderEngine() == RenderEngine.JAVA || executable() == null;
+    }
+    
+    /**
+     * Draws images of dot with Java renderer, graph is laid out once
+     * for all images.
+     * @param dot closed when it is read
+     * @param images locations of images by type
+     * @throws IOException
+     */
+    private void renderInJava(InputStream dot, Map<String, String> images) throws IOException {
+    	Map<String, OutputStream> outs = new LinkedHashMap<>();
+    	try (InputStream in = dot) {
+    		for(Map.Entry<String, String> image : images.entrySet()) {
+    			outs.put(image.getKey(), new BufferedOutputStream(Files.newOutputStream(Paths.get(image.getValue()))));
+    		}
+    		long start = System.nanoTime();
+    		JavaRenderer.render(in, outs);
+    		listener.phase(GraphVizListener.Phase.LAYOUT, System.nanoTime() - start);
+    	} finally {
+    		for(OutputStream out : outs.values()) {
+    			out.close();
+    		}
+    	}
+    }
+    
+    private void renderInJava(InputStream dot, String type, OutputStream out) throws IOException {
+    	long start = System.nanoTime();
+    	JavaRenderer.render(dot, type, out);
+    	listener.phase(GraphVizListener.Phase.LAYOUT, System.nanoTime() - start);
+    }
+    
+    private void warnGraphVizNotStarted(IOException e) {
+    	System.err.println("Warning: "+executable()+" could not be started ("+e.getMessage()
+    			+ "), image is drawn by built-in Java renderer");
+    }
+    
+    /**
+     * Renders graph image in memory, dot is piped to GraphViz
+     * and nothing is written to filesystem.
+     * @param graph
+     * @return image bytes in format set by setFileType
+     * @throws IOException if dot can't be started or fails
+     */
+    public byte[] renderToBytes(Object graph) throws IOException {
+    	ByteArrayOutputStream out = new ByteArrayOutputStream();
+    	renderTo(graph, out);
+    	return out.toByteArray();
+    }
+    
+    /**
+     * Renders image from dot string in memory.
+     * @param dotString
+     * @return image bytes in format set by setFileType
+     * @throws IOException if dot can't be started or fails
+     */
+    public byte[] renderToBytes(String dotString) throws IOException {
+    	ByteArrayOutputStream out = new ByteArrayOutputStream();
+    	renderTo(dotString, out);
+    	return out.toByteArray();
+    }
+    
+    /**
+     * Renders image of given type from dot string in memory, type set by
+     * setFileType is not changed.
+     * @param dotString
+     * @param type one of allowed file types
+     * @return image bytes
+     * @throws IOException if dot can't be started or fails
+     */
+    byte[] renderToBytes(String dotString, String type) throws IOException {
+    	ByteArrayOutputStream out = new ByteArrayOutputStream();
+    	pipe(new StringDot(dotString), type, out);
+    	return out.toByteArray();
+    }
+    
+    /**
+     * Renders graph image to out. Dot is streamed to standard input of
+     * GraphViz while image is read from its standard output.
+     * Out is not closed.
+     * @param graph
+     * @param out
+     * @throws IOException if dot can't be started or fails
+     */
+    public void renderTo(Object graph, OutputStream out) throws IOException {
+    	pipe(new GraphDot(graph), config.fileType(), out);
+    }
+    
+    /**
+     * Renders image from dot string to out. Out is not closed.
+     * @param dotString
+     * @param out
+     * @throws IOException if dot can't be started or fails
+     */
+    public void renderTo(String dotString, OutputStream out) throws IOException {
+    	pipe(new StringDot(dotString), config.fileType(), out);
+    }
+    
+    /**
+     * Renders graph image in memory with options of this render,
+     * settings of GraphViz are not changed.
+     * @param graph
+     * @param options
+     * @return image bytes
+     * @throws IOException if dot can't be started or fails
+     */
+    public byte[] renderToBytes(Object graph, RenderOptions options) throws IOException {
+    	return with(options).renderToBytes(graph);
+    }
+    
+    public byte[] renderToBytes(String dotString, RenderOptions options) throws IOException {
+    	return with(options).renderToBytes(dotString);
+    }
+    
+    public void renderTo(Object graph, OutputStream out, RenderOptions options) throws IOException {
+    	with(options).renderTo(graph, out);
+    }
+    
+    public void renderTo(String dotString, OutputStream out, RenderOptions options) throws IOException {
+    	with(options).renderTo(dotString, out);
+    }
+    
+    /**
+     * Creates graph image with options of this render, settings of
+     * GraphViz are not changed.
+     * @param fileName
+     * @param graph
+     * @param options
+     * @return result with exit code and errors of dot
+     */
+    public RenderResult createGraphImage(String fileName, Object graph, RenderOptions options) {
+    	return with(options).createGraphImage(fileName, graph);
+    }
+    
+    public RenderResult createGraphImage(String fileName, String dotString, RenderOptions options) {
+    	return with(options).createGraphImage(fileName, dotString);
+    }
+    
+    /**
+     * @param options
+     * @return GraphViz that renders with config changed by options
+     */
+    private GraphViz with(RenderOptions options) {
+    	return new GraphViz(this, options.applyTo(config));
+    }
+    
+    /**
+     * Renders images of many graphs with one dot process for each layout
+     * engine, dot of graphs is written to temporary directory that is
+     * deleted afterwards. Values are graphs or dot strings.
+     * @param graphs
+     * @return images in same order as graphs
+     * @throws IOException if some image can't be rendered
+     */
+    public List<byte[]> renderBatch(List<?> graphs) throws IOException {
+    	String type = config.fileType();
+    	checkSupported(type);
+    	if(usesJavaRenderer() || renderCache != null) {
+    		List<byte[]> images = new ArrayList<>(graphs.size());
+    		for(Object graph : graphs) {
+    			ByteArrayOutputStream out = new ByteArrayOutputStream();
+    			pipe(dotSource(graph), type, out);
+    			images.add(out.toByteArray());
+    		}
+    		return images;
+    	}
+    	
+    	Path dir = Files.createTempDirectory("graphviz-batch");
+    	try {
+    		List<String> dotFiles = new ArrayList<>(graphs.size());
+    		List<LayoutEngine> engines = new ArrayList<>(graphs.size());
+    		Map<LayoutEngine, List<String>> batches = new EnumMap<>(LayoutEngine.class);
+    		for(int i = 0; i < graphs.size(); i++) {
+    			DotSource source = dotSource(graphs.get(i));
+    			String file = dir.resolve("graph_"+i+".dot").toString();
+    			writeDot(Paths.get(file), source);
+    			LayoutEngine engine = selectLayout(source);
+    			dotFiles.add(file);
+    			engines.add(engine);
+    			batches.computeIfAbsent(engine, e -> new ArrayList<>()).add(file);
+    		}
+    		for(Map.Entry<LayoutEngine, List<String>> batch : batches.entrySet()) {
+    			runDotBatch(batch.getKey(), type, batch.getValue());
+    		}
+    		
+    		List<byte[]> images = new ArrayList<>(graphs.size());
+    		for(int i = 0; i < dotFiles.size(); i++) {
+    			Path output = Paths.get(batchOutput(dotFiles.get(i), type));
+    			if(!Files.exists(output) || Files.size(output) == 0) {
+    				RenderResult result = runDot(dotFiles.get(i), Collections.singletonMap(type, output.toString()),
+    						engines.get(i), null);
+    				if(!result.isSuccess()) {
+    					throw new IOException(executable()+" failed on graph "+i+" of batch ("+result+")");
+    				}
+    			}
+    			images.add(Files.readAllBytes(output));
+    		}
+    		return images;
+    	} finally {
+    		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+    			for(Path file : files) {
+    				Files.deleteIfExists(file);
+    			}
+    		}
+    		Files.deleteIfExists(dir);
+    	}
+    }
+    
+    private DotSource dotSource(Object graph) {
+    	return graph instanceof String ? new StringDot((String) graph) : new GraphDot(graph);
+    }
+    
+    /**
+     * Renders source to out, through render cache if it is set.
+     * @param source
+     * @param type of image
+     * @param out
+     * @throws IOException
+     */
+    private void pipe(DotSource source, String type, OutputStream out) throws IOException {
+    	checkSupported(type);
+    	RenderCache cache = renderCache;
+    	if(cache == null) {
+    		//engine is chosen by size graph declares, so dot is written only once
+    		pipeToDot(source, type, out, selectLayout(source));
+    		return;
+    	}
+    	
+    	//dot is generated twice on cache miss, once for key and once for dot
+    	long start = System.nanoTime();
+    	MessageDigest md = RenderCache.newDigest();
+    	source.writeTo(new RenderCache.DigestChannel(md));
+    	LayoutEngine engine = selectLayout(source);
+    	String key = RenderCache.key(md, type, layoutEngine(engine));
+    	long[] rendered = {0};
+    	byte[] image = cache.get(key, () -> {
+    		rendered[0] = System.nanoTime();
+    		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    		if(pipeToDot(source, type, bytes, engine)) {
+    			//image of sample is not kept, so retry can draw whole graph
+    			throw new RenderCache.UncachedImage(bytes.toByteArray());
+    		}
+    		return bytes.toByteArray();
+    	});
+    	listener.phase(GraphVizListener.Phase.CACHE_LOOKUP, (rendered[0] == 0 ? System.nanoTime() : rendered[0]) - start);
+    	out.write(image);
+    }
+    
+    /**
+     * Runs dot without files, retried with cheaper layout engines and then
+     * with reduced graph when dot does not finish before render timeout.
+     * @param source
+     * @param type of image
+     * @param out
+     * @param engine layout engine tried first
+     * @return true if image was drawn from reduced graph
+     * @throws IOException
+     */
+    private boolean pipeToDot(DotSource source, String type, OutputStream out, LayoutEngine engine) throws IOException {
+    	if(usesJavaRenderer()) {
+    		renderInJava(source, type, out);
+    		return false;
+    	}
+    	for(LayoutEngine e = engine; e != null; e = e.cheaper()) {
+    		if(pipeToDotOnce(source, type, out, e)) {
+    			return false;
+    		}
+    	}
+    	System.err.println("Warning: layout did not finish in "+config.renderTimeoutMillis()
+    			+ " ms, image is drawn from sample of "+REDUCED_EDGES+" edges");
+    	ByteArrayOutputStream dot = new ByteArrayOutputStream();
+    	source.writeTo(Channels.newChannel(dot));
+    	byte[] reduced = reducedDot(new ByteArrayInputStream(dot.toByteArray()));
+    	if(!pipeToDotOnce(new StringDot(new String(reduced, StandardCharsets.UTF_8)), type, out, LayoutEngine.SFDP)) {
+    		throw new IOException(executable()+" did not finish in "+config.renderTimeoutMillis()+" ms even with reduced graph");
+    	}
+    	return true;
+    }
+    
+    /**
+     * Runs dot once without files, source is written to its standard input
+     * on calling thread and image is copied to out on reader thread. With
+     * render timeout image is buffered, so nothing reaches out if dot is killed.
+     * @param source
+     * @param type of image
+     * @param out
+     * @param engine
+     * @return false if dot was killed at render timeout
+     * @throws IOException
+     */
+    private boolean pipeToDotOnce(DotSource source, String type, OutputStream out, LayoutEngine engine) throws IOException {
+    	GraphVizListener l = listener;
+    	ProcessBuilder pb = new ProcessBuilder(command(engine, type));
+    	long start = System.nanoTime();
+    	Process p;
+    	try {
+    		p = pb.start();
+    	} catch (IOException e) {
+    		warnGraphVizNotStarted(e);
+    		renderInJava(source, type, out);
+    		return true;
+    	}
+    	long started = System.nanoTime();
+    	l.phase(GraphVizListener.Phase.PROCESS_START, started - start);
+    	
+    	ByteArrayOutputStream buffered = config.renderTimeoutMillis() > 0 ? new ByteArrayOutputStream() : null;
+    	CompletableFuture<Void> image = ProcessStreams.copy(p.getInputStream(), buffered != null ? buffered : out);
+    	CompletableFuture<String> errors = ProcessStreams.capture(p.getErrorStream(), ProcessStreams.MAX_ERROR_BYTES);
+    	
+    	IOException writeFailure = null;
+    	CountingChannel dot = null;
+    	try (OutputStream stdin = p.getOutputStream()) {
+    		dot = new CountingChannel(Channels.newChannel(stdin));
+    		source.writeTo(dot);
+    	} catch (IOException e) {
+    		//dot closed its input, exit code tells why
+    		writeFailure = e;
+    	}
+    	l.phase(GraphVizListener.Phase.DOT, System.nanoTime() - started);
+    	if(writeFailure == null) {
+    		l.dotWritten(dot.bytes);
+    	}
+    	
+    	RenderResult result;
+    	try {
+    		result = finish(p, started, engine, errors, null);
+    		ProcessStreams.await(image);
+    	} catch (InterruptedException e) {
+    		p.destroyForcibly();
+    		Thread.currentThread().interrupt();
+    		throw new InterruptedIOException("Rendering with "+executable()+" was interrupted");
+    	}
+    	if(result.timedOut()) {
+    		return false;
+    	}
+    	if(!result.isSuccess()) {
+    		throw new IOException(executable()+" failed ("+result+")");
+    	}
+    	if(writeFailure != null) {
+    		throw writeFailure;
+    	}
+    	if(buffered != null) {
+    		buffered.writeTo(out);
+    	}
+    	return true;
+    }
+    
+    /**
+     * Draws image of dot source with Java renderer, dot is kept
+     * in memory while it is read.
+     * @param source
+     * @param type of image
+     * @param out
+     * @throws IOException
+     */
+    private void renderInJava(DotSource source, String type, OutputStream out) throws IOException {
+    	ByteArrayOutputStream dot = new ByteArrayOutputStream();
+    	source.writeTo(Channels.newChannel(dot));
+    	listener.dotWritten(dot.size());
+    	renderInJava(new ByteArrayInputStream(dot.toByteArray()), type, out);
+    }
+    
+    /**
+     * Dot source written to channel, either string or graph.
+     */
+    @FunctionalInterface
+    private interface DotSource {
+    	void writeTo(WritableByteChannel channel) throws IOException;
+    	
+    	/**
+    	 * @return vertices counted when dot was written, -1 if not known
+    	 */
+    	default int vertexCount() {
+    		return -1;
+    	}
+    	
+    	/**
+    	 * @return edges counted when dot was written, -1 if not known
+    	 */
+    	default long edgeCount() {
+    		return -1;
+    	}
+    	
+    	/**
+    	 * @return vertices graph declares without being visited, -1 if not known
+    	 */
+    	default int declaredVertexCount() {
+    		return -1;
+    	}
+    }
+    
+    /**
+     * Dot of graph object, vertices and edges are counted while it is written.
+     */
+    private final class GraphDot implements DotSource {
+    	private final Object graph;
+    	/** positions written as pinned pos of vertices, null for none */
+    	private final LayoutPositions pins;
+    	private volatile int vertices = -1;
+    	private volatile long edges = -1;
+    	/** every drawn vertex got position when dot was written */
+    	private volatile boolean allPinned;
+    	private final boolean findComponents;
+    	/** components of drawn graph when they are found, null otherwise */
+    	private volatile GraphComponents components;
+    	
+    	GraphDot(Object graph) {
+    		this(graph, null);
+    	}
+    	
+    	GraphDot(Object graph, LayoutPositions pins) {
+    		this(graph, pins, false);
+    	}
+    	
+    	/**
+    	 * @param graph
+    	 * @param pins null for none
+    	 * @param findComponents true to find components while dot is written
+    	 */
+    	GraphDot(Object graph, LayoutPositions pins, boolean findComponents) {
+    		this.graph = graph;
+    		this.pins = pins;
+    		this.findComponents = findComponents;
+    	}
+    	
+    	@Override
+    	public void writeTo(WritableByteChannel channel) throws IOException {
+    		DotEncoder encoder = DotEncoder.acquire(channel, config.weightPrecision());
+    		try {
+    			if(pins != null) {
+    				encoder.drawn = new BitSet();
+    			}
+    			if(findComponents) {
+    				encoder.components = new GraphComponents();
+    			}
+    			allPinned = writeDot(graph, encoder, pins);
+    			components = encoder.components;
+    			vertices = encoder.vertices;
+    			edges = encoder.vertices < 0 ? -1 : encoder.edges;
+    		} finally {
+    			encoder.release();
+    		}
+    	}
+    	
+    	@Override
+    	public int vertexCount() {
+    		return vertices;
+    	}
+    	
+    	@Override
+    	public long edgeCount() {
+    		return edges;
+    	}
+    	
+    	@Override
+    	public int declaredVertexCount() {
+    		try {
+    			//reductions keep numbers of vertices, so count of graph is used
+    			return graphSource(graph).vertexCount();
+    		} catch (ReflectiveOperationException | RuntimeException e) {
+    			return -1;
+    		}
+    	}
+    }
+    
+    /**
+     * Dot given as string, edges are counted by edge operators in it.
+     */
+    private static final class StringDot implements DotSource {
+    	private final String dot;
+    	private long edges = -1;
+    	
+    	StringDot(String dot) {
+    		this.dot = dot;
+    	}
+    	
+    	@Override
+    	public void writeTo(WritableByteChannel channel) throws IOException {
+    		channel.write(StandardCharsets.UTF_8.encode(dot));
+    	}
+    	
+    	@Override
+    	public long edgeCount() {
+    		if(edges < 0) {
+    			long n = 0;
+    			for(int i = dot.indexOf('-'); i >= 0 && i + 1 < dot.length(); i = dot.indexOf('-', i + 1)) {
+    				char c = dot.charAt(i + 1);
+    				if(c == '>' || c == '-') {
+    					n++;
+    					i++;
+    				}
+    			}
+    			edges = n;
+    		}
+    		return edges;
+    	}
+    }
+    
+    /**
+     * Channel that counts bytes written to underlying channel.
+     */
+    private static final class CountingChannel implements WritableByteChannel {
+    	private final WritableByteChannel channel;
+    	private long bytes;
+    	
+    	CountingChannel(WritableByteChannel channel) {
+    		this.channel = channel;
+    	}
+    	
+    	@Override
+    	public int write(ByteBuffer src) throws IOException {
+    		int n = channel.write(src);
+    		bytes += n;
+    		return n;
+    	}
+    	
+    	@Override
+    	public boolean isOpen() {
+    		return channel.isOpen();
+    	}
+    	
+    	@Override
+    	public void close() throws IOException {
+    		channel.close();
+    	}
     }
     
     /**
@@ -319,6 +1788,9 @@ public class GraphViz
     	} else {
     		sb.append("/graph_"+dotId+".dot");
     	}
+    	if(config.dotCompression() && dotArchive == null) {
+    		sb.append(COMPRESSED_DOT_SUFFIX);
+    	}
     	return sb.toString();
     }
     
@@ -329,15 +1801,19 @@ public class GraphViz
      * @return filename
      */
     private String createDrawingFileName(String fileName, int dotId) {
+    	return createDrawingFileName(fileName, dotId, config.fileType());
+    }
+    
+    private String createDrawingFileName(String fileName, int dotId, String type) {
     	StringBuilder sb = new StringBuilder(rootDir);
     	//length should be greater than 5 because `.dot` is 4 letters
     	if(fileName != null && fileName.length() > 5) {
     		sb.append("/"+fileName);
-    		if(!fileName.substring(fileName.length() - (fileType.length()+1)).equals(fileType)) {
-    			sb.append("."+fileType);
+    		if(!fileName.endsWith("."+type)) {
+    			sb.append("."+type);
     		}
     	} else {
-    		sb.append("/graph_drawing_"+dotId+"."+fileType);
+    		sb.append("/graph_drawing_"+dotId+"."+type);
     	}
     	return sb.toString();
     }
@@ -348,21 +1824,50 @@ public class GraphViz
      * @return
      * @throws java.io.IOException
      */
-    private int writeDotToFile(String filename, String dotString) throws IOException
+    int writeDotToFile(String filename, String dotString) throws IOException
+    {
+    	return writeDotToFile(filename, new StringDot(dotString));
+    }
+    
+    /**
+     * Writes dot of graph to file, dot is streamed to file
+     * while graph is visited.
+     * @param filename
+     * @param graph
+     * @return
+     * @throws java.io.IOException
+     */
+    int writeDotToFile(String filename, Object graph) throws IOException
+    {
+    	return writeDotToFile(filename, new GraphDot(graph));
+    }
+    
+    private int writeDotToFile(String filename, DotSource source) throws IOException
     {
+    	ensureStructure();
     	int dotId = 1;
     	if(filename == null) {
     		dotId = updateDotId();
+    		if(dotId == -1) {
+    			return -1;
+    		}
     	} 
     	
     	String file = createDotFileName(filename, dotId);
-    	File dot = new File(file);
-
+    	DotArchive archive = dotArchive;
+    	
         try {
-        	dot.createNewFile();
-            FileWriter fout = new FileWriter(dot);
-            fout.write(dotString);
-            fout.close();
+        	long start = System.nanoTime();
+        	long bytes;
+        	if(archive != null) {
+        		bytes = archive.append(new File(file).getName(), source::writeTo);
+        	} else {
+        		bytes = writeDot(Paths.get(file), source);
+        	}
+        	GraphVizListener l = listener;
+        	l.phase(GraphVizListener.Phase.DOT, System.nanoTime() - start);
+        	l.dotWritten(bytes);
+        	dotLayouts.put(file, selectLayout(source));
         }
         catch (Exception e) {
             System.err.println("Error: I/O error while writing the dot source to dot file!");
@@ -373,40 +1878,235 @@ public class GraphViz
     }
     
     /**
-     * For no more than 400 edges
-     * Opens default browser and sends query to image-charts to draw graph
-     * Graph will be drawn as .png file
+     * Writes dot to file, compressed with gzip if name of file ends with .gz.
+     * @param file
+     * @param source
+     * @return size of dot before compression
+     * @throws IOException
+     */
+    private static long writeDot(Path file, DotSource source) throws IOException {
+    	try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        		StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+    		if(!file.toString().endsWith(COMPRESSED_DOT_SUFFIX)) {
+    			source.writeTo(channel);
+    			return channel.position();
+    		}
+    		DotArchive.Gzip gz = new DotArchive.Gzip(Channels.newOutputStream(channel));
+    		try {
+    			return gz.write(source::writeTo);
+    		} finally {
+    			gz.end();
+    		}
+    	}
+    }
+    
+    /**
+     * Dot file is plain text that dot can read by itself, not
+     * compressed or in archive.
+     * @param dotFileLocation
+     * @return true if file is plain
+     */
+    private boolean isPlainDotFile(String dotFileLocation) {
+    	return dotArchive == null && !dotFileLocation.endsWith(COMPRESSED_DOT_SUFFIX);
+    }
+    
+    /**
+     * Opens dot file or dot in archive, compressed dot is
+     * decompressed while it is read.
+     * @param dotFileLocation
+     * @return uncompressed dot
+     * @throws IOException
+     */
+    private InputStream openDot(String dotFileLocation) throws IOException {
+    	DotArchive archive = dotArchive;
+    	if(archive != null) {
+    		return archive.open(new File(dotFileLocation).getName());
+    	}
+    	InputStream in = Files.newInputStream(Paths.get(dotFileLocation));
+    	if(!dotFileLocation.endsWith(COMPRESSED_DOT_SUFFIX)) {
+    		return in;
+    	}
+    	try {
+    		return new GZIPInputStream(in, DOT_BUFFER_SIZE);
+    	} catch (IOException e) {
+    		in.close();
+    		throw e;
+    	}
+    }
+    
+    /**
+     * Takes snapshot of graph and compares it with snapshot taken
+     * by previous call for same graph object. If reduction is set
+     * snapshot is taken of reduced graph.
      * @param graph
+     * @return diff, every edge is added on first call for graph
+     * @throws ClassNotFoundException if class of graph is not allowed
+     * @throws NoSuchMethodException if graph does not have required methods
+     * @throws IllegalAccessException if required methods are not accessible
      */
-    public void drawInBrowser(Object graph) {
+    public GraphDiff diff(Object graph) throws ClassNotFoundException,
+    NoSuchMethodException, IllegalAccessException {
+    	GraphSnapshot current = snapshot(graph);
+    	return GraphDiff.between(snapshots.put(graph, current), current);
+    }
+    
+    private GraphSnapshot snapshot(Object graph) throws ClassNotFoundException,
+    NoSuchMethodException, IllegalAccessException {
+    	GraphSource source = graphSource(graph);
+    	GraphReduction r = reduction;
+    	if(r != null) {
+    		source = r.apply(source);
+    	}
+    	return GraphSnapshot.of(source);
+    }
+    
+    /**
+     * Forgets snapshot of graph, next diff sees all edges as added.
+     * @param graph
+     */
+    public void clearSnapshot(Object graph) {
+    	snapshots.remove(graph);
+    }
+    
+    /**
+     * Forgets positions of vertices of graph, its next image is laid
+     * out from scratch.
+     * @param graph
+     */
+    public void clearLayout(Object graph) {
+    	layouts.remove(graph);
+    }
+    
+    /**
+     * Creates dot of diff. Added edges are green and removed edges are red
+     * and dashed, if deltaOnly is false unchanged edges are written too.
+     * @param diff
+     * @param deltaOnly
+     * @return dot
+     */
+    public String toDot(GraphDiff diff, boolean deltaOnly) {
+    	StringBuilder sb = new StringBuilder();
     	try {
-    		String dot = URLEncoder.encode(toDot(graph).replace("\s", "")
-    				.replace("\n", "").replace("\t", ""), "UTF-8");
-        	String url = GRAPH_DRAWING_ONLINE_SERVICE+dot;
-			Desktop.getDesktop().browse(new URL(url).toURI());
-		} catch (IOException | URISyntaxException e) {
-			e.printStackTrace();
-		}
+    		toDot(diff, deltaOnly, sb);
+    	} catch (IOException e) {
+    		//StringBuilder does not throw IOException
+    		throw new UncheckedIOException(e);
+    	}
+    	return sb.toString();
+    }
+    
+    public void toDot(GraphDiff diff, boolean deltaOnly, Appendable out) throws IOException {
+    	GraphSnapshot current = diff.current();
+    	String glue = current.isDirected() ? " -> " : " -- ";
+    	boolean weighted = current.isWeighted();
+    	int precision = config.weightPrecision();
+    	out.append(current.isDirected() ? "digraph {\n" : "graph {\n");
+    	try {
+    		if(deltaOnly) {
+    			diff.forEachAdded((v, w, wt) -> appendDiffEdge(out, v, glue, w, weighted, wt, precision, DIFF_ADDED));
+    		} else {
+    			diff.forEachCurrent((v, w, wt, added) -> appendDiffEdge(out, v, glue, w, weighted, wt,
+    					precision, added ? DIFF_ADDED : null));
+    		}
+    		diff.forEachRemoved((v, w, wt) -> appendDiffEdge(out, v, glue, w, weighted, wt, precision, DIFF_REMOVED));
+    	} catch (UncheckedIOException e) {
+    		throw e.getCause();
+    	}
+    	out.append("}");
+    }
+    
+    private static void appendDiffEdge(Appendable out, int v, String glue, int w,
+    		boolean weighted, double wt, int precision, String style) {
+    	try {
+    		out.append(SPACING).append(Integer.toString(v)).append(glue).append(Integer.toString(w));
+    		if(weighted || style != null) {
+    			out.append("[");
+    			if(weighted) {
+    				out.append("label=").append(DotEncoder.formatWeight(wt, precision));
+    			}
+    			if(style != null) {
+    				out.append(weighted ? "," : "").append(style);
+    			}
+    			out.append("]");
+    		}
+    		out.append(";\n");
+    	} catch (IOException e) {
+    		throw new UncheckedIOException(e);
+    	}
+    }
+    
+    /**
+     * Creates graph image only if graph changed since previous call for same
+     * graph object, image shows whole graph with changes highlighted, or only
+     * changed edges if deltaOnly is true. Snapshot of graph is kept only
+     * when image is created, so change is drawn again after failure.
+     * @param fileName
+     * @param graph
+     * @param deltaOnly
+     * @return true if image was created
+     */
+    public boolean createGraphImageIfChanged(String fileName, Object graph, boolean deltaOnly) {
+    	GraphSnapshot current;
+    	try {
+    		current = snapshot(graph);
+    	} catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+    		e.printStackTrace();
+    		return false;
+    	} catch (UndeclaredThrowableException e) {
+    		e.getUndeclaredThrowable().printStackTrace();
+    		return false;
+    	}
+    	GraphDiff diff = GraphDiff.between(snapshots.get(graph), current);
+    	if(diff.isEmpty()) {
+    		return false;
+    	}
+    	boolean created = createGraphImage(fileName, (DotSource) channel -> {
+    		Writer out = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), DOT_BUFFER_SIZE);
+    		toDot(diff, deltaOnly, out);
+    		out.flush();
+    	}).isSuccess();
+    	if(created) {
+    		snapshots.put(graph, current);
+    	}
+    	return created;
+    }
+    
+    /**
+     * Opens default browser with image of graph drawn by local
+     * GraphViz server, which is started by first call and closed
+     * when browser does not use it for few minutes.
+     * Graph is drawn as .svg file
+     * @param graph
+     */
+    public void drawInBrowser(Object graph) {
+    	drawInBrowser(toDot(graph));
     }
     
     /**
-     * For no more than 400 edges
-     * Opens default browser and sends query to image-charts to draw graph
-     * Graph will be drawn as .png file
+     * Opens default browser with image of dot drawn by local
+     * GraphViz server.
      * @param string (dot)
      */
     public void drawInBrowser(String dotString) {
     	try {
-    		String dot = URLEncoder.encode(dotString.replace("\s", "")
-    				.replace("\n", "").replace("\t", ""), "UTF-8");
-        	String url = GRAPH_DRAWING_ONLINE_SERVICE+dot;
-			Desktop.getDesktop().browse(new URL(url).toURI());
-		} catch (IOException | URISyntaxException e) {
+    		URI uri = browserServer().publish(dotString);
+    		if(Desktop.isDesktopSupported() && Desktop.getDesktop().isSupported(Desktop.Action.BROWSE)) {
+    			Desktop.getDesktop().browse(uri);
+    		} else {
+    			System.out.println("Graph is drawn at "+uri);
+    		}
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
     }
     
-    
+    private synchronized GraphVizServer browserServer() throws IOException {
+    	if(browserServer == null || !browserServer.isOpen()) {
+    		browserServer = new GraphVizServer(this);
+    		browserServer.closeWhenIdle(BROWSER_SERVER_IDLE_MILLIS);
+    	}
+    	return browserServer;
+    }
     
     /**
      * Creates dot representation of graph passed as parameter.
@@ -415,6 +2115,90 @@ public class GraphViz
      * @return
      */
     public String toDot(Object graph) {
+    	StringBuilder sb = new StringBuilder();
+    	try {
+			toDot(graph, sb);
+		} catch (IOException e) {
+			//StringBuilder does not throw IOException
+			throw new UncheckedIOException(e);
+		}
+    	return sb.toString();
+    }
+    
+    /**
+     * Writes dot representation of graph to out while edges are visited,
+     * whole dot string is never kept in memory. Graph can be object of one
+     * of allowed graph classes or GraphSource.
+     * @param graph
+     * @param out
+     * @throws IOException if out can't be written to
+     */
+    public void toDot(Object graph, Appendable out) throws IOException {
+    	DotEncoder encoder = DotEncoder.acquire(out, config.weightPrecision());
+    	try {
+    		writeDot(graph, encoder);
+    	} finally {
+    		encoder.release();
+    	}
+    }
+    
+    /**
+     * Writes dot representation of graph to channel through buffer of
+     * fixed size. Channel is not closed.
+     * @param graph
+     * @param channel
+     * @throws IOException
+     */
+    public void toDot(Object graph, WritableByteChannel channel) throws IOException {
+    	DotEncoder encoder = DotEncoder.acquire(channel, config.weightPrecision());
+    	try {
+    		writeDot(graph, encoder);
+    	} finally {
+    		encoder.release();
+    	}
+    }
+    
+    /**
+     * Writes dot of graph through encoder and flushes it.
+     * @param graph
+     * @param encoder
+     * @throws IOException
+     */
+    private void writeDot(Object graph, DotEncoder encoder) throws IOException {
+    	writeDot(graph, encoder, null);
+    }
+    
+    /**
+     * Writes dot of graph, with pinned positions of vertices
+     * drawn in earlier layout when pins are given.
+     * @param graph
+     * @param encoder records drawn vertices when pins are given
+     * @param pins null for none
+     * @return true if every drawn vertex got position
+     * @throws IOException
+     */
+    private boolean writeDot(Object graph, DotEncoder encoder, LayoutPositions pins) throws IOException {
+    	boolean allPinned = false;
+    	try {
+    		if(graph instanceof GraphSource) {
+    			GraphSource source = (GraphSource) graph;
+    			encoder.writeAscii(source.isDirected() ? "digraph {\n" : "graph {\n");
+    			linkVertices(source, encoder);
+    		} else {
+    			writeGraphDot(graph, encoder);
+    		}
+    		if(pins != null) {
+    			allPinned = pins.writePins(encoder.drawn, encoder);
+    		}
+    		encoder.writeAscii("}");
+    	} catch (UncheckedIOException e) {
+    		throw e.getCause();
+    	}
+    	encoder.flush();
+    	return allPinned;
+    }
+    
+    private void writeGraphDot(Object graph, DotEncoder encoder) {
     	String className = graph.getClass().getSimpleName();
     	try {
 			validateClassName(className);
@@ -422,99 +2206,119 @@ public class GraphViz
 			e1.printStackTrace();
 		}
 		
-    	StringBuilder sb = new StringBuilder();
     	try {
-    		sb.append(graphTypeDotIdentifier(className));
-    		//if graph or digraph
-    		if(className.equals(graphClassName) 
-    		   || className.equals(digraphClassName)) {
-    			sb.append(linkVertices(graph, className));
-    		//if edge weighted graph or edge weighted digraph
-			} else if (className.equals(edgeWeightedGraphClassName) 
-					   || className.equals(edgeWeightedDigraphClassName)) {
-				sb.append(linkEdgeWeightedVertices(graph, className));
-			}
+    		encoder.writeAscii(graphTypeDotIdentifier(className));
+    		linkVertices(graphSource(graph), encoder);
 		} catch (IllegalAccessException 
 				| IllegalArgumentException 
-				| InvocationTargetException 
 				| NoSuchMethodException
 				| SecurityException
 				| ClassNotFoundException e) {
 			e.printStackTrace();
+		} catch (UndeclaredThrowableException e) {
+			//exception thrown by method of graph or edge
+			e.getUndeclaredThrowable().printStackTrace();
 		}
-    	sb.append("}");
-    	
-    	return sb.toString();
     }
     
     /**
-     * For graph and digraph creates string of vertices
-     * @param graph
-     * @param className
-     * @return
-     * @throws NoSuchMethodException
-     * @throws SecurityException
-     * @throws IllegalAccessException
-     * @throws IllegalArgumentException
-     * @throws InvocationTargetException
-     */
-    @SuppressWarnings("unchecked")
-	private String linkVertices(Object graph, String className) throws 
-	NoSuchMethodException, SecurityException, IllegalAccessException, 
-	IllegalArgumentException, InvocationTargetException {
-    	StringBuilder sb = new StringBuilder();
-    	Method V = graph.getClass().getMethod(numberOfVerticesMethodName);
-		Method adj = graph.getClass().getMethod(adjacentVerticesMethodName, int.class);
-		for(int v = 0; v < (int)V.invoke(graph); v++) {
-			for(int w : (Iterable<Integer>) adj.invoke(graph, v)) {
-				if(className.equals(graphClassName)) {
-					if(v < w) {
-						sb.append(SPACING+v+ glue(className) + w);
-						sb.append(";\n");
-					}
-					
-				} else if(className.equals(digraphClassName)) {
-					sb.append(SPACING+v+ glue(className) + w);
-					sb.append(";\n");
-				}
-			}
-		}
-		return sb.toString();
+     * Writes edges of graph through encoder, one line per edge.
+     * If reduction is set only edges of reduced graph are written.
+     * Large graphs are written in parallel when parallel dot is enabled.
+     * IOException of destination is thrown as UncheckedIOException.
+     * @param source
+     * @param encoder
+     */
+    private void linkVertices(GraphSource source, DotEncoder encoder) {
+    	GraphReduction r = reduction;
+    	if(r != null) {
+    		source = r.apply(source);
+    	}
+    	encoder.begin(source);
+    	GraphVizConfig c = config;
+    	//union-find of components is not shared by ranges
+    	if(c.parallelDot() && encoder.components == null && source.visitsEdgesByVertex()
+    			&& source.vertexCount() >= c.parallelThreshold()) {
+    		linkVerticesInParallel(source, encoder);
+    	} else {
+    		source.forEachEdge(encoder);
+    	}
+    	encoder.vertices = source.visitsEdgesByVertex() ? source.vertexCount() : encoder.maxVertex + 1;
+    	listener.graph(encoder.vertices, encoder.edges);
     }
     
-    @SuppressWarnings("unchecked")
-	private String linkEdgeWeightedVertices(Object graph, String className) throws 
-    NoSuchMethodException, SecurityException, IllegalAccessException, 
-    IllegalArgumentException, InvocationTargetException {
-    	StringBuilder sb = new StringBuilder();
-    	int v = -1;
-		int w = -1;
-    	Method edges = graph.getClass().getMethod(edgeMethodName);
-    	for(Object edge : (Iterable<Object>) edges.invoke(graph)) {
-    		Method weight = edge.getClass().getMethod(edgeWeightMethodName);
-			double wt = (double) weight.invoke(edge);
-    		if(className.equals(edgeWeightedGraphClassName)) {
-    			Method from = edge.getClass().getMethod(edgeWeightedGraphEither);
-    			Method to = edge.getClass().getMethod(edgeWeightedGraphOther, int.class);
-    			
-    			v = (int) from.invoke(edge);
-    			w = (int) to.invoke(edge, v);
-    		} else if(className.equals(edgeWeightedDigraphClassName)) {
-    			Method from = edge.getClass().getMethod(edgeWeightedDigraphFrom);
-    			Method to = edge.getClass().getMethod(edgeWeightedDigraphTo);
-    			
-    			v = (int) from.invoke(edge);
-    			w = (int) to.invoke(edge);
+    /**
+     * Splits vertices in ranges, ForkJoin workers write edges of each range
+     * to its own buffer and buffers are appended to encoder in order of
+     * vertices, so dot is same as when it is written sequentially. Only
+     * limited number of ranges is in progress at once.
+     * @param source
+     * @param encoder
+     */
+    private void linkVerticesInParallel(GraphSource source, DotEncoder encoder) {
+    	int n = source.vertexCount();
+    	ForkJoinPool pool = ForkJoinPool.commonPool();
+    	int window = pool.getParallelism() * 4;
+    	int chunk = Math.max(PARALLEL_MIN_CHUNK, n / (window * 4));
+    	
+    	ArrayDeque<ForkJoinTask<DotEncoder>> running = new ArrayDeque<>(window);
+    	int next = 0;
+    	while(next < n || !running.isEmpty()) {
+    		while(next < n && running.size() < window) {
+    			int from = next;
+    			int to = (int) Math.min(n, (long) next + chunk);
+    			running.add(pool.submit(() -> linkVertexRange(source, encoder, from, to)));
+    			next = to;
     		}
-    		
-    		if(v == -1 || w == -1) {
-    			throw new IllegalArgumentException();
+    		encoder.append(running.poll().join());
+    	}
+    }
+    
+    private static DotEncoder linkVertexRange(GraphSource source, DotEncoder parent, int from, int to) {
+    	DotEncoder range = DotEncoder.forRange(parent);
+    	GraphSource.EdgeConsumer each = source.isDirected() ? range : (v, w, wt) -> {
+    		if(v < w) {
+    			range.accept(v, w, wt);
     		}
-    		
-    		sb.append(SPACING+v+ glue(className) + w + "[label="+wt+"]");
-			sb.append(";\n");
+    	};
+    	for(int v = from; v < to; v++) {
+    		source.forEachEdge(v, each);
     	}
-    	return sb.toString();
+    	return range;
+    }
+    
+    /**
+     * Creates graph source for object of one of allowed graph classes,
+     * methods of graph are called by names currently set.
+     * Graph source gives vertices and edges of graph through
+     * primitive callbacks.
+     * @param graph
+     * @return graph source
+     * @throws ClassNotFoundException if class of graph is not allowed
+     * @throws NoSuchMethodException if graph does not have required methods
+     * @throws IllegalAccessException if required methods are not accessible
+     */
+    public GraphSource graphSource(Object graph) throws ClassNotFoundException,
+    NoSuchMethodException, IllegalAccessException {
+    	if(graph instanceof GraphSource) {
+    		return (GraphSource) graph;
+    	}
+    	
+    	String className = graph.getClass().getSimpleName();
+    	validateClassName(className);
+    	if(isWeighted(className)) {
+    		return new ReflectiveGraphSource.EdgeWeighted(graph, accessors(), isDigraph(className));
+    	}
+    	return new ReflectiveGraphSource.Adjacency(graph, accessors(), isDigraph(className));
+    }
+    
+    /**
+     * Method handles for currently set method names. Handles are resolved
+     * once per graph/edge class and dropped when any method name changes.
+     * @return accessors
+     */
+    private GraphAccessors accessors() {
+    	return config.accessors();
     }
     
     /**
@@ -527,10 +2331,11 @@ public class GraphViz
      * @throws ClassNotFoundException
      */
     public void validateClassName(String className) throws ClassNotFoundException {
-    	if(!className.equals(graphClassName) &&
-    	   !className.equals(digraphClassName) && 
-    	   !className.equals(edgeWeightedGraphClassName) &&
-    	   !className.equals(edgeWeightedDigraphClassName)) {
+    	GraphVizConfig c = config;
+    	if(!className.equals(c.graphClassName()) &&
+    	   !className.equals(c.digraphClassName()) && 
+    	   !className.equals(c.edgeWeightedGraphClassName()) &&
+    	   !className.equals(c.edgeWeightedDigraphClassName())) {
 
            throw new ClassNotFoundException();
     	}
@@ -542,7 +2347,8 @@ public class GraphViz
      * @return String glue (-- for graph or -> for digraph)
      */
     public String glue(String className) {
-    	if(className.equals(graphClassName) || className.equals(edgeWeightedGraphClassName)) {
+    	GraphVizConfig c = config;
+    	if(className.equals(c.graphClassName()) || className.equals(c.edgeWeightedGraphClassName())) {
     		return " -- ";
     	} 
     	
@@ -555,7 +2361,8 @@ public class GraphViz
      * @return boolean
      */
     public boolean isDigraph(String className) {
-    	if(className.equals(digraphClassName) || className.equals(edgeWeightedDigraphClassName)) {
+    	GraphVizConfig c = config;
+    	if(className.equals(c.digraphClassName()) || className.equals(c.edgeWeightedDigraphClassName())) {
     		return true;
     	}
     	
@@ -568,7 +2375,8 @@ public class GraphViz
      * @return boolean
      */
     public boolean isWeighted(String className) {
-    	if(className.equals(edgeWeightedGraphClassName) || className.equals(edgeWeightedDigraphClassName)) {
+    	GraphVizConfig c = config;
+    	if(className.equals(c.edgeWeightedGraphClassName()) || className.equals(c.edgeWeightedDigraphClassName())) {
     		return true;
     	}
     	
@@ -576,9 +2384,10 @@ public class GraphViz
     }
     
     public String graphTypeDotIdentifier(String className) throws ClassNotFoundException {
-    	if(className.equals(graphClassName) || className.equals(edgeWeightedGraphClassName)) {
+    	GraphVizConfig c = config;
+    	if(className.equals(c.graphClassName()) || className.equals(c.edgeWeightedGraphClassName())) {
     		return "graph {\n";
-    	} else if(className.equals(digraphClassName) || className.equals(edgeWeightedDigraphClassName)) {
+    	} else if(className.equals(c.digraphClassName()) || className.equals(c.edgeWeightedDigraphClassName())) {
     		return "digraph {\n";
     	}
     	
@@ -588,135 +2397,275 @@ public class GraphViz
     /**
      * Updates graph dot id in info/counter.txt (by default) file
      * Graph dot id tracks how many graph are created 
-     * and increments when new graph is created
-     * @return number of current graph
+     * and increments when new graph is created.
+     * Ids are reserved from counter file in blocks, so most ids are
+     * given out without accessing file and graphs created at the same time,
+     * from different threads or programs, never get same id.
+     * @return number of current graph, -1 if counter can't be updated
      */
     public int updateDotId() {
-    	return writeDotId(readDotId());
-    }
-    
-    /**
-     * Reads graph dot id in info/counter.txt (by default) file.
-     * @return
-     */
-    private int readDotId() {
-    	BufferedReader br = null;
-    	try {
-			br = new BufferedReader(new FileReader(new File(rootDir+GRAPH_COUNTER)));
-			String s = br.readLine();
-			if(s == null) {
-				return 0;
-			}
-			return Integer.parseInt(s);
-		} catch (Exception e) {
-			System.err.println("Cant read graph counter on location "+rootDir+GRAPH_COUNTER+".");
-			e.printStackTrace();
-		} finally {
-			try {
-				br.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
-		return -1;
-    }
-    
-	/**
-	 * Writes to graph counter in info/counter.txt (by default) file,
-	 * currentGraph is read, incremented and written to counter as
-	 * new count of graph created so far.
-	 * @param currentGraph
-	 * @return
-	 */
-    private int writeDotId(int currentGraph) {
-    	PrintWriter pw = null;
-    	currentGraph += 1;
     	try {
-	      pw = new PrintWriter(rootDir+GRAPH_COUNTER);
-	      pw.print("");
-	      pw.print(currentGraph);
-	    } catch (IOException e) {
-	      System.err.println("Cant write in graph counter on location "+rootDir+GRAPH_COUNTER+".");
-	      e.printStackTrace();
-	    } finally {
-	    	pw.close();
-	    }
-
-    	return currentGraph;
+    		return (int) DotIdAllocator.forCounter(new File(rootDir+GRAPH_COUNTER)).allocate();
+    	} catch (IOException e) {
+    		System.err.println("Cant update graph counter on location "+rootDir+GRAPH_COUNTER+".");
+    		e.printStackTrace();
+    	}
+    	return -1;
     }
 
     public void setNumberOfVerticesMethodName(String methodName) {
-    	numberOfVerticesMethodName = methodName;
+    	update(b -> b.numberOfVerticesMethodName(methodName));
     }
     
     public void setAdjacentVerticesMethodName(String methodName) {
-    	adjacentVerticesMethodName = methodName;
+    	update(b -> b.adjacentVerticesMethodName(methodName));
     }
     
     public void setGraphClassName(String className) {
-    	graphClassName = className;
+    	update(b -> b.graphClassName(className));
     }
     
     public void setDigraphClassName(String className) {
-    	digraphClassName = className;
+    	update(b -> b.digraphClassName(className));
     }
     
     public void setEdgeWeightedGraphClassName(String className) {
-    	edgeWeightedGraphClassName = className;
+    	update(b -> b.edgeWeightedGraphClassName(className));
     }
     
     public void setEdgeWeightedDigraphClassName(String className) {
-    	edgeWeightedDigraphClassName = className;
+    	update(b -> b.edgeWeightedDigraphClassName(className));
     }
     
     public void setEdgeMethodName(String methodName) {
-    	edgeMethodName = methodName;
+    	update(b -> b.edgeMethodName(methodName));
     }
     
     public void setEdgeWeightMethodName(String methodName) {
-    	edgeWeightMethodName = methodName;
+    	update(b -> b.edgeWeightMethodName(methodName));
     }
     
     public void setEdgeWeightedGraphEither(String methodName) {
-    	edgeWeightedGraphEither = methodName;
+    	update(b -> b.edgeWeightedGraphEither(methodName));
     }
     
     public void setEdgeWeightedGraphOther(String methodName) {
-    	edgeWeightedGraphOther = methodName;
+    	update(b -> b.edgeWeightedGraphOther(methodName));
     }
     
     public void setEdgeWeightedDigraphFrom(String methodName) {
-    	edgeWeightedDigraphFrom = methodName;
+    	update(b -> b.edgeWeightedDigraphFrom(methodName));
     }
     
     public void setEdgeWeightedDigraphTo(String methodName) {
-    	edgeWeightedDigraphTo = methodName;
+    	update(b -> b.edgeWeightedDigraphTo(methodName));
     }
 
     public void setFileType(String fileType) {
-    	if(!ALLOWED_FILE_TYPES.contains(fileType)) {
-    		throw new IllegalArgumentException();
+    	GraphVizConfig.checkFileType(fileType);
+    	update(b -> b.fileType(fileType));
+    }
+    
+    /**
+     * Enables writing of dot in parallel for graphs that have at least
+     * parallel threshold vertices. Dot is same as when it is written
+     * sequentially. Graph must not be changed while dot is written.
+     * @param parallelDot
+     */
+    public void setParallelDot(boolean parallelDot) {
+    	update(b -> b.parallelDot(parallelDot));
+    }
+    
+    /**
+     * Sets number of vertices below which dot is always written
+     * sequentially, 50000 by default.
+     * @param minVertices
+     */
+    public void setParallelThreshold(int minVertices) {
+    	update(b -> b.parallelThreshold(minVertices));
+    }
+    
+    /**
+     * Sets number of digits after decimal point written for edge weights,
+     * weights are rounded and trailing zeros dropped, so dot is smaller.
+     * By default (-1) weights are written same as Double.toString.
+     * @param digits from 0 to 15, or -1
+     */
+    public void setWeightPrecision(int digits) {
+    	update(b -> b.weightPrecision(digits));
+    }
+    
+    /**
+     * Sets reduction applied to graphs while their dot is written, for
+     * example GraphReduction.neighbourhood(seeds, 2), GraphReduction.topDegree(500)
+     * or GraphReduction.edgeSample(2000, seed). Null disables reduction.
+     * Reduction is not applied to dot strings.
+     * @param reduction
+     */
+    public void setReduction(GraphReduction reduction) {
+    	this.reduction = reduction;
+    }
+    
+    /**
+     * Sets cache used for rendered images, null disables caching.
+     * @param renderCache
+     */
+    public void setRenderCache(RenderCache renderCache) {
+    	this.renderCache = renderCache;
+    }
+    
+    /**
+     * Enables render cache stored in rootDir/cache.
+     * @param maxMemoryBytes size of images kept in memory
+     * @param maxDiskBytes size of images kept on disk
+     */
+    public void enableRenderCache(long maxMemoryBytes, long maxDiskBytes) {
+    	setRenderCache(new RenderCache(new File(rootDir+CACHE_DIR), maxMemoryBytes, maxDiskBytes));
+    }
+    
+    public RenderCache getRenderCache() {
+    	return renderCache;
+    }
+    
+    /**
+     * Sets what draws images, GraphViz executable (default) or built-in
+     * Java renderer which needs no external program.
+     * @param engine
+     */
+    public void setRenderEngine(RenderEngine engine) {
+    	update(b -> b.renderEngine(engine));
+    }
+    
+    public RenderEngine getRenderEngine() {
+    	return config.renderEngine();
+    }
+    
+    /**
+     * Sets layout engine passed to GraphViz with -K. When engine is null
+     * (default) it is chosen by size of graph: dot for small graphs,
+     * neato for medium and sfdp for large graphs.
+     * @param engine
+     */
+    public void setLayoutEngine(LayoutEngine engine) {
+    	update(b -> b.layoutEngine(engine));
+    }
+    
+    public LayoutEngine getLayoutEngine() {
+    	return config.layoutEngine();
+    }
+    
+    /**
+     * Sets how long GraphViz may lay out and draw one image. Dot that runs
+     * longer is killed and run again with cheaper layout engine, and after
+     * sfdp with sample of graph edges, so render time stays bounded.
+     * @param millis 0 (default) for no timeout
+     */
+    public void setRenderTimeout(long millis) {
+    	update(b -> b.renderTimeout(millis));
+    }
+    
+    /**
+     * Enables writing of dot files compressed with gzip, as graph_N.dot.gz.
+     * Dot is decompressed while it is piped to GraphViz, so uncompressed
+     * dot is never written to disk.
+     * @param compress
+     */
+    public void setDotCompression(boolean compress) {
+    	update(b -> b.dotCompression(compress));
+    }
+    
+    /**
+     * Enables reuse of layout between images of same graph object. Positions
+     * of vertices are kept from last image of graph, and next image of it is
+     * drawn by neato with those vertices pinned, so only new vertices are
+     * placed and vertices do not jump between images. When all vertices
+     * are known neato -n only draws edges. Not used by Java renderer.
+     * @param reuse
+     */
+    public void setLayoutReuse(boolean reuse) {
+    	update(b -> b.layoutReuse(reuse));
+    	if(!reuse) {
+    		layouts.clear();
     	}
-    	
-    	this.fileType = fileType;
+    }
+    
+    /**
+     * Enables layout of connected components, weakly connected for
+     * digraphs, by parallel dot runs. Components are found while dot of
+     * graph is written and each group of them is laid out by its own dot,
+     * so graphs made of many components are drawn much faster. Groups are
+     * packed in one image by gvpack when it is installed with dot,
+     * otherwise they are drawn as numbered pages and createGraphImage
+     * returns location of index page. Not used by Java renderer, render
+     * cache or layout reuse.
+     * @param components
+     */
+    public void setComponentLayout(boolean components) {
+    	update(b -> b.componentLayout(components));
+    }
+    
+    /**
+     * Sets archive to which dots are appended instead of being written
+     * to separate files, null writes separate files again.
+     * @param archive
+     */
+    public void setDotArchive(DotArchive archive) {
+    	dotArchive = archive;
+    }
+    
+    /**
+     * Enables archive rootDir/dot/archive-N.dot.gz with index
+     * rootDir/dot/archive.idx, dots written before are kept.
+     * @param maxPartBytes size after which new part file is started
+     * @throws IOException if archive can't be opened
+     */
+    public void enableDotArchive(long maxPartBytes) throws IOException {
+    	setDotArchive(new DotArchive(Paths.get(rootDir+DOT_DIR), ARCHIVE_NAME, maxPartBytes));
+    }
+    
+    public DotArchive getDotArchive() {
+    	return dotArchive;
+    }
+    
+    /**
+     * Sets listener that receives duration of render phases, sizes of graphs
+     * and dots and exit codes of dot, for example GraphVizMetrics or
+     * GraphVizJfrListener. By default nothing is printed or measured,
+     * GraphVizListener.CONSOLE prints location of every created image.
+     * @param listener
+     */
+    public void setListener(GraphVizListener listener) {
+    	this.listener = listener != null ? listener : GraphVizListener.NONE;
+    }
+    
+    public GraphVizListener getListener() {
+    	return listener;
     }
     
     public void resetMethodNames() {
-    	numberOfVerticesMethodName = "V";
-        adjacentVerticesMethodName = "adj";
-    	edgeMethodName = "edges";
-        edgeWeightMethodName = "weight";
-        edgeWeightedGraphEither = "either";
-        edgeWeightedGraphOther = "other";
-        edgeWeightedDigraphFrom = "from";
-        edgeWeightedDigraphTo = "to";
+    	update(b -> b.defaultMethodNames());
     }
     
     public void resetGraphClassNames() {
-    	graphClassName = "Graph";
-        digraphClassName = "Digraph";
-        edgeWeightedGraphClassName = "EdgeWeightedGraph";
-        edgeWeightedDigraphClassName = "EdgeWeightedDigraph";
+    	update(b -> b.defaultGraphClassNames());
+    }
+    
+    /**
+     * @return current settings, setters replace them with changed copy
+     */
+    public GraphVizConfig getConfig() {
+    	return config;
+    }
+    
+    /**
+     * Replaces config with its copy changed by builder, renders that
+     * already read config keep old settings.
+     * @param change
+     */
+    private synchronized void update(Consumer<GraphVizConfig.Builder> change) {
+    	GraphVizConfig.Builder b = config.toBuilder();
+    	change.accept(b);
+    	config = b.build();
     }
 
     /**
@@ -766,18 +2715,52 @@ public class GraphViz
     			+ "-Same can be applied for other methods for setting method name.\n"
     			+ "-All method and graph names can be reset to default by using methods resetMethodNames() and resetGraphClassNames()\n"
     			+ "-respectively.\n\n");
-    	sb.append("-By using method toDot(Object graph) GraphViz will return String representaion of graph passed to method.\n");
+    	sb.append("-By using method toDot(Object graph) GraphViz will return String representaion of graph passed to method.\n"
+    			+ "-For large graphs toDot(Object graph, Appendable out) and toDot(Object graph, WritableByteChannel channel)\n"
+    			+ "-write dot directly to destination without keeping whole dot string in memory.\n"
+    			+ "-Method setWeightPrecision(int digits) rounds weights written to dot, for example setWeightPrecision(2).\n");
     	sb.append("-Output image type can be changed by using method setFileType(String fileType). Allowed file types are:\n"
     			+ "\t-png (default)\n"
     			+ "\t-jpg\n"
     			+ "\t-gif.\n"
-    			+ "-For example if gif is required, method setFileType(String fileType) should be used as setFileType(\"gif\").\n\n");
+    			+ "-For example if gif is required, method setFileType(String fileType) should be used as setFileType(\"gif\").\n"
+    			+ "-Types installed GraphViz can't write are rejected with IllegalArgumentException when image is created, getSupportedFormats()\n"
+    			+ "-and getGraphVizVersion() tell what dot -V and dot -T? reported when GraphViz was first used.\n"
+    			+ "-Images of several types from one layout are created by createGraphImage(fileName, graph, Set.of(\"png\", \"svg\")).\n"
+    			+ "-With setLayoutReuse(true) vertices keep their positions between images of same graph object.\n"
+    			+ "-With setComponentLayout(true) connected components of graph are laid out by parallel dot runs and packed\n"
+    			+ "-by gvpack, or drawn as pages of index page graph_drawing_N.html when gvpack is not installed.\n"
+    			+ "-One GraphViz created with GraphVizConfig.builder()...build() can be shared by threads, and settings\n"
+    			+ "-of single image are given with RenderOptions, for example renderToBytes(graph, RenderOptions.builder().fileType(\"svg\").build()).\n\n");
     	sb.append("-If in your implementation of graph you have toDot() method, or toString() method that returns dot format of graph,\n"
     			+ "-(or for that purpose any other method that returns dot formated string of graph)\n"
     			+ "-GraphViz can be used to draw your graph by using\n"
     			+ "-createGraphImage(String dotSource) as createGraphImage(graph.toDot()) or createGraphImage(graph.toString()).\n\n");
-    	sb.append("-For graphs that have less than 400 edges method drawInBrowser(Object graph) or drawInBrowser(String dot) can be used.\n"
-    			+ "-Default browser will be opened and appropriate query sent to service that does drawing.");
+    	sb.append("-Method drawInBrowser(Object graph) or drawInBrowser(String dot) can be used for graphs of any size.\n"
+    			+ "-Graph is drawn by local server started on first call and default browser is opened with its image.\n"
+    			+ "-GraphVizServer can be used directly, dot POSTed to graphs under its uri() is answered with URL of its image.\n");
+    	sb.append("-Graphs kept in arrays can be passed as GraphSource instead of graph object, for example\n"
+    			+ "-GraphSource.of(int[][] adjacency, boolean directed) or\n"
+    			+ "-GraphSource.csr(int[] offsets, int[] targets, double[] weights, boolean directed).\n");
+    	sb.append("-Graphs too large to be drawn can be reduced by using setReduction(GraphReduction reduction), for example\n"
+    			+ "-setReduction(GraphReduction.neighbourhood(new int[] {0}, 2)) draws only vertices at most 2 edges away from 0.\n"
+    			+ "-Parallel edges are drawn as one edge labeled with their count by\n"
+    			+ "-setReduction(GraphReduction.aggregate(GraphReduction.Aggregation.COUNT)), or with SUM, MIN or MAX of weights.\n");
+    	sb.append("-For graphs that change over time createGraphImageIfChanged(String fileName, Object graph, boolean deltaOnly)\n"
+    			+ "-draws graph only if it changed since previous call, added edges are green and removed edges red.\n");
+    	sb.append("-Methods renderToBytes(Object graph) and renderTo(Object graph, OutputStream out) render image in memory,\n"
+    			+ "-dot is piped to GraphViz and no files are created.\n");
+    	sb.append("-Layout engine is chosen by graph size (dot, neato, sfdp), setLayoutEngine(LayoutEngine) fixes it.\n"
+    			+ "-setRenderTimeout(millis) kills dot that runs longer and retries with cheaper engine or sampled graph.\n");
+    	sb.append("-Without GraphViz images are drawn by built-in renderer, setRenderEngine(RenderEngine.JAVA) always uses it.\n"
+    			+ "-Built-in renderer uses force directed layout and is fast for graphs with up to about 100000 vertices.\n");
+    	sb.append("-Dot files are compressed by setDotCompression(true), or appended to one compressed archive\n"
+    			+ "-with index by enableDotArchive(long maxPartBytes), dot is decompressed while it is piped to GraphViz.\n");
+    	sb.append("-Method enableRenderCache(long maxMemoryBytes, long maxDiskBytes) caches rendered images, same dot\n"
+    			+ "-and file type are rendered only once.\n");
+    	sb.append("-Duration of render phases and sizes of graphs are measured by setListener(new GraphVizMetrics()),\n"
+    			+ "-or recorded as Flight Recorder events by setListener(new GraphVizJfrListener()).\n"
+    			+ "-Locations of created images are printed by setListener(GraphVizListener.CONSOLE).\n");
     	sb.append("----Usage example----\n"
     			+ "public class Main {\r\n"
     			+ "    public static void main(String[] args) {\r\n"
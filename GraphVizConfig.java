@@ -0,0 +1,512 @@
+package GraphViz;
+
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable settings of GraphViz: names of graph classes and of their
+ * methods, type of images, layout and how dot is written. Config is
+ * created with builder and never changes, so GraphViz created from it
+ * can be shared by any number of threads. Setters of GraphViz replace
+ * its config with changed copy.
+ * <pre>
+ * GraphViz graphViz = new GraphViz(GraphVizConfig.builder()
+ *         .fileType("svg")
+ *         .renderTimeout(10_000)
+ *         .build());
+ * </pre>
+ */
+public final class GraphVizConfig {
+	static final Set<String> FILE_TYPES = Set.of("gif", "png", "jpg", "svg");
+
+	private final String executable;
+	private final String rootDir;
+	private final String fileType;
+	private final String numberOfVerticesMethodName;
+	private final String adjacentVerticesMethodName;
+	private final String edgeMethodName;
+	private final String edgeWeightMethodName;
+	private final String edgeWeightedGraphEither;
+	private final String edgeWeightedGraphOther;
+	private final String edgeWeightedDigraphFrom;
+	private final String edgeWeightedDigraphTo;
+	private final String graphClassName;
+	private final String digraphClassName;
+	private final String edgeWeightedGraphClassName;
+	private final String edgeWeightedDigraphClassName;
+	private final boolean parallelDot;
+	private final int parallelThreshold;
+	private final int weightPrecision;
+	private final RenderEngine renderEngine;
+	private final LayoutEngine layoutEngine;
+	private final long renderTimeoutMillis;
+	private final boolean dotCompression;
+	private final boolean layoutReuse;
+	private final boolean componentLayout;
+	//resolved from method names when first graph is read
+	private volatile GraphAccessors accessors;
+
+	private GraphVizConfig(Builder b) {
+		executable = b.executable;
+		rootDir = b.rootDir;
+		fileType = b.fileType;
+		numberOfVerticesMethodName = b.numberOfVerticesMethodName;
+		adjacentVerticesMethodName = b.adjacentVerticesMethodName;
+		edgeMethodName = b.edgeMethodName;
+		edgeWeightMethodName = b.edgeWeightMethodName;
+		edgeWeightedGraphEither = b.edgeWeightedGraphEither;
+		edgeWeightedGraphOther = b.edgeWeightedGraphOther;
+		edgeWeightedDigraphFrom = b.edgeWeightedDigraphFrom;
+		edgeWeightedDigraphTo = b.edgeWeightedDigraphTo;
+		graphClassName = b.graphClassName;
+		digraphClassName = b.digraphClassName;
+		edgeWeightedGraphClassName = b.edgeWeightedGraphClassName;
+		edgeWeightedDigraphClassName = b.edgeWeightedDigraphClassName;
+		parallelDot = b.parallelDot;
+		parallelThreshold = b.parallelThreshold;
+		weightPrecision = b.weightPrecision;
+		renderEngine = b.renderEngine;
+		layoutEngine = b.layoutEngine;
+		renderTimeoutMillis = b.renderTimeoutMillis;
+		dotCompression = b.dotCompression;
+		layoutReuse = b.layoutReuse;
+		componentLayout = b.componentLayout;
+		//copy keeps resolved method handles while method names are same
+		if(b.copiedFrom != null && b.copiedFrom.hasMethodNamesOf(this)) {
+			accessors = b.copiedFrom.accessors();
+		}
+	}
+
+	/**
+	 * @return builder with default settings
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return builder with settings of this config
+	 */
+	public Builder toBuilder() {
+		return new Builder(this);
+	}
+
+	/**
+	 * @return GraphViz executable, null if it is searched on expected locations
+	 */
+	public String executable() {
+		return executable;
+	}
+
+	/**
+	 * @return directory of images and dot files, null for default directory
+	 */
+	public String rootDir() {
+		return rootDir;
+	}
+
+	public String fileType() {
+		return fileType;
+	}
+
+	public String numberOfVerticesMethodName() {
+		return numberOfVerticesMethodName;
+	}
+
+	public String adjacentVerticesMethodName() {
+		return adjacentVerticesMethodName;
+	}
+
+	public String edgeMethodName() {
+		return edgeMethodName;
+	}
+
+	public String edgeWeightMethodName() {
+		return edgeWeightMethodName;
+	}
+
+	public String edgeWeightedGraphEither() {
+		return edgeWeightedGraphEither;
+	}
+
+	public String edgeWeightedGraphOther() {
+		return edgeWeightedGraphOther;
+	}
+
+	public String edgeWeightedDigraphFrom() {
+		return edgeWeightedDigraphFrom;
+	}
+
+	public String edgeWeightedDigraphTo() {
+		return edgeWeightedDigraphTo;
+	}
+
+	public String graphClassName() {
+		return graphClassName;
+	}
+
+	public String digraphClassName() {
+		return digraphClassName;
+	}
+
+	public String edgeWeightedGraphClassName() {
+		return edgeWeightedGraphClassName;
+	}
+
+	public String edgeWeightedDigraphClassName() {
+		return edgeWeightedDigraphClassName;
+	}
+
+	public boolean parallelDot() {
+		return parallelDot;
+	}
+
+	public int parallelThreshold() {
+		return parallelThreshold;
+	}
+
+	public int weightPrecision() {
+		return weightPrecision;
+	}
+
+	public RenderEngine renderEngine() {
+		return renderEngine;
+	}
+
+	/**
+	 * @return layout engine, null if it is chosen by size of graph
+	 */
+	public LayoutEngine layoutEngine() {
+		return layoutEngine;
+	}
+
+	/**
+	 * @return render timeout in milliseconds, 0 for none
+	 */
+	public long renderTimeoutMillis() {
+		return renderTimeoutMillis;
+	}
+
+	public boolean dotCompression() {
+		return dotCompression;
+	}
+
+	public boolean layoutReuse() {
+		return layoutReuse;
+	}
+
+	public boolean componentLayout() {
+		return componentLayout;
+	}
+
+	private boolean hasMethodNamesOf(GraphVizConfig c) {
+		return Objects.equals(numberOfVerticesMethodName, c.numberOfVerticesMethodName)
+				&& Objects.equals(adjacentVerticesMethodName, c.adjacentVerticesMethodName)
+				&& Objects.equals(edgeMethodName, c.edgeMethodName)
+				&& Objects.equals(edgeWeightMethodName, c.edgeWeightMethodName)
+				&& Objects.equals(edgeWeightedGraphEither, c.edgeWeightedGraphEither)
+				&& Objects.equals(edgeWeightedGraphOther, c.edgeWeightedGraphOther)
+				&& Objects.equals(edgeWeightedDigraphFrom, c.edgeWeightedDigraphFrom)
+				&& Objects.equals(edgeWeightedDigraphTo, c.edgeWeightedDigraphTo);
+	}
+
+	/**
+	 * Method handles for method names of this config, resolved once.
+	 * @return accessors
+	 */
+	GraphAccessors accessors() {
+		GraphAccessors a = accessors;
+		if(a == null) {
+			a = new GraphAccessors(numberOfVerticesMethodName, adjacentVerticesMethodName,
+					edgeMethodName, edgeWeightMethodName,
+					edgeWeightedGraphEither, edgeWeightedGraphOther,
+					edgeWeightedDigraphFrom, edgeWeightedDigraphTo);
+			accessors = a;
+		}
+		return a;
+	}
+
+	/**
+	 * Builder of config, every setting has its default value until it is set.
+	 */
+	public static final class Builder {
+		private String executable;
+		private String rootDir;
+		private String fileType = "png";
+		private String numberOfVerticesMethodName = "V";
+		private String adjacentVerticesMethodName = "adj";
+		private String edgeMethodName = "edges";
+		private String edgeWeightMethodName = "weight";
+		private String edgeWeightedGraphEither = "either";
+		private String edgeWeightedGraphOther = "other";
+		private String edgeWeightedDigraphFrom = "from";
+		private String edgeWeightedDigraphTo = "to";
+		private String graphClassName = "Graph";
+		private String digraphClassName = "Digraph";
+		private String edgeWeightedGraphClassName = "EdgeWeightedGraph";
+		private String edgeWeightedDigraphClassName = "EdgeWeightedDigraph";
+		private boolean parallelDot;
+		private int parallelThreshold = 50_000;
+		private int weightPrecision = -1;
+		private RenderEngine renderEngine = RenderEngine.GRAPHVIZ;
+		private LayoutEngine layoutEngine;
+		private long renderTimeoutMillis;
+		private boolean dotCompression;
+		private boolean layoutReuse;
+		private boolean componentLayout;
+		//config this builder was copied from, null for new builder
+		private GraphVizConfig copiedFrom;
+
+		private Builder() {
+		}
+
+		private Builder(GraphVizConfig c) {
+			copiedFrom = c;
+			executable = c.executable;
+			rootDir = c.rootDir;
+			fileType = c.fileType;
+			numberOfVerticesMethodName = c.numberOfVerticesMethodName;
+			adjacentVerticesMethodName = c.adjacentVerticesMethodName;
+			edgeMethodName = c.edgeMethodName;
+			edgeWeightMethodName = c.edgeWeightMethodName;
+			edgeWeightedGraphEither = c.edgeWeightedGraphEither;
+			edgeWeightedGraphOther = c.edgeWeightedGraphOther;
+			edgeWeightedDigraphFrom = c.edgeWeightedDigraphFrom;
+			edgeWeightedDigraphTo = c.edgeWeightedDigraphTo;
+			graphClassName = c.graphClassName;
+			digraphClassName = c.digraphClassName;
+			edgeWeightedGraphClassName = c.edgeWeightedGraphClassName;
+			edgeWeightedDigraphClassName = c.edgeWeightedDigraphClassName;
+			parallelDot = c.parallelDot;
+			parallelThreshold = c.parallelThreshold;
+			weightPrecision = c.weightPrecision;
+			renderEngine = c.renderEngine;
+			layoutEngine = c.layoutEngine;
+			renderTimeoutMillis = c.renderTimeoutMillis;
+			dotCompression = c.dotCompression;
+			layoutReuse = c.layoutReuse;
+			componentLayout = c.componentLayout;
+		}
+
+		/**
+		 * @param executable GraphViz executable, null to search it on expected locations
+		 * @return this builder
+		 */
+		public Builder executable(String executable) {
+			this.executable = executable;
+			return this;
+		}
+
+		/**
+		 * @param rootDir directory of images and dot files, null for default directory
+		 * @return this builder
+		 */
+		public Builder rootDir(String rootDir) {
+			this.rootDir = rootDir;
+			return this;
+		}
+
+		/**
+		 * @param fileType gif, png (default), jpg or svg
+		 * @return this builder
+		 */
+		public Builder fileType(String fileType) {
+			checkFileType(fileType);
+			this.fileType = fileType;
+			return this;
+		}
+
+		public Builder numberOfVerticesMethodName(String methodName) {
+			numberOfVerticesMethodName = methodName;
+			return this;
+		}
+
+		public Builder adjacentVerticesMethodName(String methodName) {
+			adjacentVerticesMethodName = methodName;
+			return this;
+		}
+
+		public Builder edgeMethodName(String methodName) {
+			edgeMethodName = methodName;
+			return this;
+		}
+
+		public Builder edgeWeightMethodName(String methodName) {
+			edgeWeightMethodName = methodName;
+			return this;
+		}
+
+		public Builder edgeWeightedGraphEither(String methodName) {
+			edgeWeightedGraphEither = methodName;
+			return this;
+		}
+
+		public Builder edgeWeightedGraphOther(String methodName) {
+			edgeWeightedGraphOther = methodName;
+			return this;
+		}
+
+		public Builder edgeWeightedDigraphFrom(String methodName) {
+			edgeWeightedDigraphFrom = methodName;
+			return this;
+		}
+
+		public Builder edgeWeightedDigraphTo(String methodName) {
+			edgeWeightedDigraphTo = methodName;
+			return this;
+		}
+
+		/**
+		 * Sets method names back to names used by algs4 graphs.
+		 * @return this builder
+		 */
+		public Builder defaultMethodNames() {
+			GraphVizConfig defaults = new Builder().build();
+			numberOfVerticesMethodName = defaults.numberOfVerticesMethodName;
+			adjacentVerticesMethodName = defaults.adjacentVerticesMethodName;
+			edgeMethodName = defaults.edgeMethodName;
+			edgeWeightMethodName = defaults.edgeWeightMethodName;
+			edgeWeightedGraphEither = defaults.edgeWeightedGraphEither;
+			edgeWeightedGraphOther = defaults.edgeWeightedGraphOther;
+			edgeWeightedDigraphFrom = defaults.edgeWeightedDigraphFrom;
+			edgeWeightedDigraphTo = defaults.edgeWeightedDigraphTo;
+			return this;
+		}
+
+		public Builder graphClassName(String className) {
+			graphClassName = className;
+			return this;
+		}
+
+		public Builder digraphClassName(String className) {
+			digraphClassName = className;
+			return this;
+		}
+
+		public Builder edgeWeightedGraphClassName(String className) {
+			edgeWeightedGraphClassName = className;
+			return this;
+		}
+
+		public Builder edgeWeightedDigraphClassName(String className) {
+			edgeWeightedDigraphClassName = className;
+			return this;
+		}
+
+		/**
+		 * Sets class names back to names of algs4 graphs.
+		 * @return this builder
+		 */
+		public Builder defaultGraphClassNames() {
+			GraphVizConfig defaults = new Builder().build();
+			graphClassName = defaults.graphClassName;
+			digraphClassName = defaults.digraphClassName;
+			edgeWeightedGraphClassName = defaults.edgeWeightedGraphClassName;
+			edgeWeightedDigraphClassName = defaults.edgeWeightedDigraphClassName;
+			return this;
+		}
+
+		/**
+		 * @param parallelDot true to write dot of large graphs in parallel
+		 * @return this builder
+		 */
+		public Builder parallelDot(boolean parallelDot) {
+			this.parallelDot = parallelDot;
+			return this;
+		}
+
+		/**
+		 * @param minVertices vertices below which dot is written sequentially, 50000 by default
+		 * @return this builder
+		 */
+		public Builder parallelThreshold(int minVertices) {
+			if(minVertices < 0) {
+				throw new IllegalArgumentException();
+			}
+			parallelThreshold = minVertices;
+			return this;
+		}
+
+		/**
+		 * @param digits after decimal point of edge weights, from 0 to 15, or -1 (default) for all
+		 * @return this builder
+		 */
+		public Builder weightPrecision(int digits) {
+			if(digits < -1 || digits > DotEncoder.MAX_PRECISION) {
+				throw new IllegalArgumentException();
+			}
+			weightPrecision = digits;
+			return this;
+		}
+
+		/**
+		 * @param engine GraphViz executable (default) or built-in Java renderer
+		 * @return this builder
+		 */
+		public Builder renderEngine(RenderEngine engine) {
+			if(engine == null) {
+				throw new IllegalArgumentException();
+			}
+			renderEngine = engine;
+			return this;
+		}
+
+		/**
+		 * @param engine null (default) to choose engine by size of graph
+		 * @return this builder
+		 */
+		public Builder layoutEngine(LayoutEngine engine) {
+			layoutEngine = engine;
+			return this;
+		}
+
+		/**
+		 * @param millis 0 (default) for no timeout
+		 * @return this builder
+		 */
+		public Builder renderTimeout(long millis) {
+			if(millis < 0) {
+				throw new IllegalArgumentException();
+			}
+			renderTimeoutMillis = millis;
+			return this;
+		}
+
+		/**
+		 * @param compress true to write dot files compressed with gzip
+		 * @return this builder
+		 */
+		public Builder dotCompression(boolean compress) {
+			dotCompression = compress;
+			return this;
+		}
+
+		/**
+		 * @param reuse true to keep positions of vertices between images of same graph
+		 * @return this builder
+		 */
+		public Builder layoutReuse(boolean reuse) {
+			layoutReuse = reuse;
+			return this;
+		}
+
+		/**
+		 * @param components true to lay out connected components of graph by parallel dot runs
+		 * @return this builder
+		 */
+		public Builder componentLayout(boolean components) {
+			componentLayout = components;
+			return this;
+		}
+
+		public GraphVizConfig build() {
+			return new GraphVizConfig(this);
+		}
+	}
+
+	static void checkFileType(String fileType) {
+		if(!FILE_TYPES.contains(fileType)) {
+			throw new IllegalArgumentException("Image type "+fileType+" is not supported");
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package GraphViz;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * GraphViz executable found on this computer, with its version and output
+ * formats. Executable is probed with dot -V and dot -T? once per JVM when
+ * first image is drawn, all GraphViz objects share the result. Executable
+ * that was not found is probed again after a while, so GraphViz installed
+ * while program runs is found.
+ */
+final class GraphVizInstallation {
+	private static final String OS_NAME = System.getProperty("os.name").replaceAll("\\s", "");
+	private static final String DEFAULT_EXECUTABLE = "dot";
+	private static final String GRAPH_VIZ_INSTALLATION_DIR = "Graphviz";
+	private static final String GRAPH_VIZ_EXE_PATH = "/bin/dot.exe";
+	private static final long PROBE_TIMEOUT_MILLIS = 10_000;
+	private static final long MISSING_RETRY_NANOS = TimeUnit.MINUTES.toNanos(1);
+	private static final String VERSION = "version";
+	private static final String FORMATS = "Use one of:";
+
+	//by executable asked for, "" when it is searched
+	private static final Map<String, GraphVizInstallation> PROBED = new ConcurrentHashMap<>();
+
+	private final String executable;
+	private final String version;
+	private final Set<String> formats;
+	private final long probedAt = System.nanoTime();
+	private final AtomicBoolean missingReported = new AtomicBoolean();
+	private volatile String gvpack;
+	private volatile boolean gvpackSearched;
+
+	private GraphVizInstallation(String executable, String version, Set<String> formats) {
+		this.executable = executable;
+		this.version = version;
+		this.formats = formats;
+	}
+
+	/**
+	 * Installation of executable, probed on first call for it. Probe runs
+	 * outside of map, so slow dot does not block callers of other
+	 * executables, if threads probe same executable first result is kept.
+	 * @param executable null to search GraphViz on expected locations
+	 * @return installation, executable of it is null if GraphViz does not work
+	 */
+	static GraphVizInstallation of(String executable) {
+		String key = executable != null ? executable : "";
+		GraphVizInstallation cached = PROBED.get(key);
+		if(cached != null && !cached.isStale()) {
+			return cached;
+		}
+		GraphVizInstallation probed = probe(key);
+		if(cached == null) {
+			cached = PROBED.putIfAbsent(key, probed);
+			return cached != null ? cached : probed;
+		}
+		if(PROBED.replace(key, cached, probed)) {
+			return probed;
+		}
+		return PROBED.getOrDefault(key, probed);
+	}
+
+	/**
+	 * @return true if GraphViz was not found and it is time to probe again
+	 */
+	boolean isStale() {
+		return executable == null && System.nanoTime() - probedAt > MISSING_RETRY_NANOS;
+	}
+
+	/**
+	 * @return working executable, null if GraphViz was not found
+	 */
+	String executable() {
+		return executable;
+	}
+
+	/**
+	 * @return version reported by dot -V, null if GraphViz was not found
+	 */
+	String version() {
+		return version;
+	}
+
+	/**
+	 * @return output formats of dot, empty if they are not known
+	 */
+	Set<String> formats() {
+		return formats;
+	}
+
+	/**
+	 * @param type
+	 * @return false only if dot is known not to write type
+	 */
+	boolean supports(String type) {
+		return formats.isEmpty() || formats.contains(type);
+	}
+
+	/**
+	 * gvpack installed with dot, searched on first call.
+	 * @return gvpack executable, null if it is not found
+	 */
+	String gvpack() {
+		if(!gvpackSearched) {
+			synchronized(this) {
+				if(!gvpackSearched) {
+					gvpack = findGvpack();
+					gvpackSearched = true;
+				}
+			}
+		}
+		return gvpack;
+	}
+
+	private String findGvpack() {
+		if(executable == null) {
+			return null;
+		}
+		File dot = new File(executable);
+		String name = dot.getName().endsWith(".exe") ? "gvpack.exe" : "gvpack";
+		if(dot.getParentFile() != null) {
+			File f = new File(dot.getParentFile(), name);
+			return f.canExecute() ? f.getPath() : null;
+		}
+		//dot is found on path, so is gvpack if it is installed
+		return run(name, "-?") != null ? name : null;
+	}
+
+	/**
+	 * @return true for first caller only, so missing GraphViz is reported once
+	 */
+	boolean reportMissing() {
+		return executable == null && missingReported.compareAndSet(false, true);
+	}
+
+	private static GraphVizInstallation probe(String asked) {
+		if(!asked.isEmpty()) {
+			return probeExecutable(asked);
+		}
+		if(OS_NAME.contains("Windows")) {
+			String found = windowsDefaultSearch();
+			if(found != null) {
+				GraphVizInstallation installation = probeExecutable(found);
+				if(installation.executable != null) {
+					return installation;
+				}
+			}
+		}
+		return probeExecutable(DEFAULT_EXECUTABLE);
+	}
+
+	private static GraphVizInstallation probeExecutable(String executable) {
+		String versionOutput = run(executable, "-V");
+		int at = versionOutput != null ? versionOutput.indexOf(VERSION) : -1;
+		if(at < 0) {
+			return new GraphVizInstallation(null, null, Collections.emptySet());
+		}
+		String version = versionOutput.substring(at + VERSION.length()).trim();
+
+		//dot lists its formats when it is asked for unknown one
+		Set<String> formats = new LinkedHashSet<>();
+		String formatOutput = run(executable, "-T?");
+		at = formatOutput != null ? formatOutput.indexOf(FORMATS) : -1;
+		if(at >= 0) {
+			for(String format : formatOutput.substring(at + FORMATS.length()).trim().split("\\s+")) {
+				int variant = format.indexOf(':');
+				formats.add(variant >= 0 ? format.substring(0, variant) : format);
+			}
+		}
+		return new GraphVizInstallation(executable, version, Collections.unmodifiableSet(formats));
+	}
+
+	/**
+	 * Runs executable with one argument and reads what it writes.
+	 * @param executable
+	 * @param argument
+	 * @return standard error and output, null if executable can't be run
+	 */
+	private static String run(String executable, String argument) {
+		Process p;
+		try {
+			p = new ProcessBuilder(executable, argument).redirectErrorStream(true).start();
+		} catch (IOException e) {
+			return null;
+		}
+		try {
+			p.getOutputStream().close();
+			CompletableFuture<String> output = ProcessStreams.capture(p.getInputStream(), ProcessStreams.MAX_ERROR_BYTES);
+			if(!p.waitFor(PROBE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				p.destroyForcibly();
+				return null;
+			}
+			return ProcessStreams.await(output);
+		} catch (IOException e) {
+			return null;
+		} catch (InterruptedException e) {
+			p.destroyForcibly();
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 * Searches Program Files directories on Windows for directory
+	 * that has GraphViz in its name.
+	 * @return path of dot.exe, null if it is not found
+	 */
+	private static String windowsDefaultSearch() {
+		String[] programFilesLocations = {"C:/Program Files (x86)", "C:/Program Files"};
+		for(String path : programFilesLocations) {
+			File[] files = new File(path).listFiles();
+			if(files == null) {
+				continue;
+			}
+			for(File f : files) {
+				if(f.isDirectory() && f.getName().contains(GRAPH_VIZ_INSTALLATION_DIR)) {
+					return path+"/"+f.getName()+GRAPH_VIZ_EXE_PATH;
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,142 @@
+package GraphViz;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Listener that emits JDK Flight Recorder events, so render phases can be
+ * seen next to GC, I/O and thread events of application. Events are
+ * recorded only while recording with them enabled is running, for example
+ * java -XX:StartFlightRecording:filename=rec.jfr ...
+ * Use GraphVizListener.of(new GraphVizJfrListener(), GraphVizListener.CONSOLE)
+ * to print locations of created images as well.
+ */
+public class GraphVizJfrListener implements GraphVizListener {
+
+	@Override
+	public void phase(Phase phase, long nanos) {
+		PhaseEvent event = new PhaseEvent();
+		if(event.isEnabled()) {
+			event.phase = phase.name();
+			event.nanos = nanos;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void graph(int vertices, long edges) {
+		GraphEvent event = new GraphEvent();
+		if(event.isEnabled()) {
+			event.vertices = vertices;
+			event.edges = edges;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void dotWritten(long bytes) {
+		DotEvent event = new DotEvent();
+		if(event.isEnabled()) {
+			event.bytes = bytes;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void processExited(int exitCode) {
+		ProcessExitEvent event = new ProcessExitEvent();
+		if(event.isEnabled()) {
+			event.exitCode = exitCode;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void timedOut(LayoutEngine engine) {
+		TimeoutEvent event = new TimeoutEvent();
+		if(event.isEnabled()) {
+			event.engine = engine != null ? engine.name() : null;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void imageCreated(String dotFileLocation, String imgFileLocation) {
+		ImageEvent event = new ImageEvent();
+		if(event.isEnabled()) {
+			event.dotFile = dotFileLocation;
+			event.imageFile = imgFileLocation;
+			event.commit();
+		}
+	}
+
+	@Name("GraphViz.Phase")
+	@Label("GraphViz Render Phase")
+	@Category("GraphViz")
+	@StackTrace(false)
+	static final class PhaseEvent extends Event {
+		@Label("Phase")
+		String phase;
+
+		@Label("Duration")
+		@Timespan(Timespan.NANOSECONDS)
+		long nanos;
+	}
+
+	@Name("GraphViz.Graph")
+	@Label("GraphViz Graph Written")
+	@Category("GraphViz")
+	@StackTrace(false)
+	static final class GraphEvent extends Event {
+		@Label("Vertices")
+		int vertices;
+
+		@Label("Edges")
+		long edges;
+	}
+
+	@Name("GraphViz.Dot")
+	@Label("GraphViz Dot Written")
+	@Category("GraphViz")
+	@StackTrace(false)
+	static final class DotEvent extends Event {
+		@Label("Size")
+		@DataAmount
+		long bytes;
+	}
+
+	@Name("GraphViz.ProcessExit")
+	@Label("GraphViz Dot Process Exit")
+	@Category("GraphViz")
+	@StackTrace(false)
+	static final class ProcessExitEvent extends Event {
+		@Label("Exit Code")
+		int exitCode;
+	}
+
+	@Name("GraphViz.Timeout")
+	@Label("GraphViz Render Timeout")
+	@Category("GraphViz")
+	@StackTrace(false)
+	static final class TimeoutEvent extends Event {
+		@Label("Layout Engine")
+		String engine;
+	}
+
+	@Name("GraphViz.Image")
+	@Label("GraphViz Image Created")
+	@Category("GraphViz")
+	@StackTrace(false)
+	static final class ImageEvent extends Event {
+		@Label("Dot File")
+		String dotFile;
+
+		@Label("Image File")
+		String imageFile;
+	}
+}
@@ -0,0 +1,140 @@
+package GraphViz;
+
+/**
+ * Receives measurements of render pipeline of GraphViz. Methods are called
+ * on thread that does the work, possibly from many threads at once, so they
+ * should be thread safe and return quickly.
+ * By default GraphViz uses NONE, listener is changed by GraphViz.setListener,
+ * CONSOLE prints location of every created image.
+ */
+public interface GraphVizListener {
+
+	enum Phase {
+		/** visiting graph and writing its dot to file or to dot process */
+		DOT,
+		/** hashing dot and looking image up in render cache */
+		CACHE_LOOKUP,
+		/** starting dot process */
+		PROCESS_START,
+		/** from start of dot process until it exits, when dot is piped this includes DOT */
+		LAYOUT,
+		/** waiting in GraphVizRenderService for free render slot or dot process */
+		QUEUE_WAIT
+	}
+
+	/**
+	 * Ignores everything.
+	 */
+	GraphVizListener NONE = new GraphVizListener() {
+	};
+
+	/**
+	 * Prints location of every created image to standard output.
+	 */
+	GraphVizListener CONSOLE = new GraphVizListener() {
+		@Override
+		public void imageCreated(String dotFileLocation, String imgFileLocation) {
+			System.out.println("From dot file "+dotFileLocation+" graph "
+					+ "image successfully created in "+imgFileLocation);
+		}
+	};
+
+	/**
+	 * Called when phase of render finished.
+	 * @param phase
+	 * @param nanos duration of phase
+	 */
+	default void phase(Phase phase, long nanos) {
+	}
+
+	/**
+	 * Called when edges of graph are written to dot. For graphs that are
+	 * not visited vertex by vertex vertices is largest vertex in edges + 1.
+	 * @param vertices
+	 * @param edges number of edges written
+	 */
+	default void graph(int vertices, long edges) {
+	}
+
+	/**
+	 * Called when dot is written to file or to dot process.
+	 * @param bytes size of dot
+	 */
+	default void dotWritten(long bytes) {
+	}
+
+	/**
+	 * Called when dot process exits.
+	 * @param exitCode
+	 */
+	default void processExited(int exitCode) {
+	}
+
+	/**
+	 * Called when dot process is killed because it did not finish before
+	 * render timeout.
+	 * @param engine layout engine dot was running
+	 */
+	default void timedOut(LayoutEngine engine) {
+	}
+
+	/**
+	 * Called when image file is created.
+	 * @param dotFileLocation
+	 * @param imgFileLocation
+	 */
+	default void imageCreated(String dotFileLocation, String imgFileLocation) {
+	}
+
+	/**
+	 * Listener that passes every call to all listeners, in order.
+	 * @param listeners
+	 * @return listener
+	 */
+	static GraphVizListener of(GraphVizListener... listeners) {
+		GraphVizListener[] all = listeners.clone();
+		return new GraphVizListener() {
+			@Override
+			public void phase(Phase phase, long nanos) {
+				for(GraphVizListener l : all) {
+					l.phase(phase, nanos);
+				}
+			}
+
+			@Override
+			public void graph(int vertices, long edges) {
+				for(GraphVizListener l : all) {
+					l.graph(vertices, edges);
+				}
+			}
+
+			@Override
+			public void dotWritten(long bytes) {
+				for(GraphVizListener l : all) {
+					l.dotWritten(bytes);
+				}
+			}
+
+			@Override
+			public void processExited(int exitCode) {
+				for(GraphVizListener l : all) {
+					l.processExited(exitCode);
+				}
+			}
+
+			@Override
+			public void timedOut(LayoutEngine engine) {
+				for(GraphVizListener l : all) {
+					l.timedOut(engine);
+				}
+			}
+
+			@Override
+			public void imageCreated(String dotFileLocation, String imgFileLocation) {
+				for(GraphVizListener l : all) {
+					l.imageCreated(dotFileLocation, imgFileLocation);
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,209 @@
+package GraphViz;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listener that collects latency histograms of render phases and totals of
+ * graphs, edges, dot bytes, dot exit codes and timeouts. Histograms have one bucket
+ * per power of two nanoseconds, so percentiles are accurate to factor of 2.
+ * Safe to use from many threads, recording never blocks.
+ * <pre>
+ * GraphVizMetrics metrics = new GraphVizMetrics();
+ * graphViz.setListener(metrics);
+ * ...
+ * System.out.println(metrics);
+ * </pre>
+ */
+public class GraphVizMetrics implements GraphVizListener {
+	private static final int BUCKETS = 64;
+	private static final Phase[] PHASES = Phase.values();
+
+	private final LongAdder[][] histograms = new LongAdder[PHASES.length][BUCKETS];
+	private final LongAdder[] phaseNanos = new LongAdder[PHASES.length];
+	private final LongAdder graphs = new LongAdder();
+	private final LongAdder vertices = new LongAdder();
+	private final LongAdder edges = new LongAdder();
+	private final LongAdder dots = new LongAdder();
+	private final LongAdder dotBytes = new LongAdder();
+	private final LongAdder images = new LongAdder();
+	private final Map<Integer, LongAdder> exitCodes = new ConcurrentHashMap<>();
+	private final Map<LayoutEngine, LongAdder> timeouts = new ConcurrentHashMap<>();
+
+	public GraphVizMetrics() {
+		for(int p = 0; p < PHASES.length; p++) {
+			phaseNanos[p] = new LongAdder();
+			for(int b = 0; b < BUCKETS; b++) {
+				histograms[p][b] = new LongAdder();
+			}
+		}
+	}
+
+	@Override
+	public void phase(Phase phase, long nanos) {
+		nanos = Math.max(0, nanos);
+		histograms[phase.ordinal()][bucket(nanos)].increment();
+		phaseNanos[phase.ordinal()].add(nanos);
+	}
+
+	@Override
+	public void graph(int vertices, long edges) {
+		graphs.increment();
+		this.vertices.add(vertices);
+		this.edges.add(edges);
+	}
+
+	@Override
+	public void dotWritten(long bytes) {
+		dots.increment();
+		dotBytes.add(bytes);
+	}
+
+	@Override
+	public void processExited(int exitCode) {
+		exitCodes.computeIfAbsent(exitCode, c -> new LongAdder()).increment();
+	}
+
+	@Override
+	public void timedOut(LayoutEngine engine) {
+		timeouts.computeIfAbsent(engine, e -> new LongAdder()).increment();
+	}
+
+	@Override
+	public void imageCreated(String dotFileLocation, String imgFileLocation) {
+		images.increment();
+	}
+
+	/**
+	 * Bucket b holds durations in [2^(b-1), 2^b), bucket 0 holds 0.
+	 */
+	private static int bucket(long nanos) {
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+	}
+
+	public long count(Phase phase) {
+		long count = 0;
+		for(LongAdder b : histograms[phase.ordinal()]) {
+			count += b.sum();
+		}
+		return count;
+	}
+
+	public long totalNanos(Phase phase) {
+		return phaseNanos[phase.ordinal()].sum();
+	}
+
+	/**
+	 * Upper bound of duration of given fraction of phases, for example
+	 * percentile(Phase.LAYOUT, 0.99) is at least p99 of layout time and
+	 * at most twice p99.
+	 * @param phase
+	 * @param fraction between 0 and 1
+	 * @return nanoseconds, 0 if phase was not recorded
+	 */
+	public long percentile(Phase phase, double fraction) {
+		if(fraction < 0 || fraction > 1) {
+			throw new IllegalArgumentException();
+		}
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for(int b = 0; b < BUCKETS; b++) {
+			counts[b] = histograms[phase.ordinal()][b].sum();
+			total += counts[b];
+		}
+		if(total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(fraction * total));
+		long seen = 0;
+		for(int b = 0; b < BUCKETS; b++) {
+			seen += counts[b];
+			if(seen >= rank) {
+				return b == 0 ? 0 : b == BUCKETS - 1 ? Long.MAX_VALUE : (1L << b) - 1;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	public long graphs() {
+		return graphs.sum();
+	}
+
+	public long vertices() {
+		return vertices.sum();
+	}
+
+	public long edges() {
+		return edges.sum();
+	}
+
+	public long dotBytes() {
+		return dotBytes.sum();
+	}
+
+	public long images() {
+		return images.sum();
+	}
+
+	/**
+	 * @return number of dot processes that exited with each exit code
+	 */
+	public Map<Integer, Long> exitCodes() {
+		Map<Integer, Long> codes = new TreeMap<>();
+		exitCodes.forEach((code, count) -> codes.put(code, count.sum()));
+		return codes;
+	}
+
+	/**
+	 * @return number of dot processes killed at render timeout for each layout engine
+	 */
+	public Map<LayoutEngine, Long> timeouts() {
+		Map<LayoutEngine, Long> counts = new TreeMap<>();
+		timeouts.forEach((engine, count) -> counts.put(engine, count.sum()));
+		return counts;
+	}
+
+	/**
+	 * Clears everything recorded so far. Measurements recorded while reset
+	 * runs may be partially kept.
+	 */
+	public void reset() {
+		for(int p = 0; p < PHASES.length; p++) {
+			phaseNanos[p].reset();
+			for(LongAdder b : histograms[p]) {
+				b.reset();
+			}
+		}
+		graphs.reset();
+		vertices.reset();
+		edges.reset();
+		dots.reset();
+		dotBytes.reset();
+		images.reset();
+		exitCodes.clear();
+		timeouts.clear();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("GraphViz metrics\n");
+		for(Phase phase : PHASES) {
+			long count = count(phase);
+			if(count == 0) {
+				continue;
+			}
+			sb.append(String.format("  %-13s count=%d mean=%.3fms p50<=%.3fms p99<=%.3fms%n", phase, count,
+					totalNanos(phase) / 1e6 / count, percentile(phase, 0.5) / 1e6, percentile(phase, 0.99) / 1e6));
+		}
+		sb.append("  graphs=").append(graphs()).append(" vertices=").append(vertices())
+			.append(" edges=").append(edges()).append('\n');
+		sb.append("  dots=").append(dots.sum()).append(" dotBytes=").append(dotBytes())
+			.append(" images=").append(images()).append(" exitCodes=").append(exitCodes());
+		if(!timeouts.isEmpty()) {
+			sb.append(" timeouts=").append(timeouts());
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,215 @@
+package GraphViz;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders graph images asynchronously by using GraphViz.
+ * Dot generation runs on virtual threads (on plain daemon threads when JVM
+ * does not have them), while number of dot processes running at the same
+ * time is limited, by default to number of available processors.
+ * Number of renders that are submitted but not finished is limited as well,
+ * when limit is reached methods that submit renders block until some render
+ * finishes.
+ * GraphViz passed to service should not be changed while service is used.
+ */
+public class GraphVizRenderService implements AutoCloseable {
+	private final GraphViz graphViz;
+	private final ExecutorService executor;
+	private final Semaphore processes;
+	private final Semaphore pending;
+
+	public GraphVizRenderService(GraphViz graphViz) {
+		this(graphViz, Runtime.getRuntime().availableProcessors());
+	}
+
+	public GraphVizRenderService(GraphViz graphViz, int maxProcesses) {
+		this(graphViz, maxProcesses, maxProcesses * 16);
+	}
+
+	/**
+	 * @param graphViz used for rendering
+	 * @param maxProcesses maximum number of dot processes running at once
+	 * @param maxPending maximum number of submitted renders not yet finished
+	 */
+	public GraphVizRenderService(GraphViz graphViz, int maxProcesses, int maxPending) {
+		if(maxProcesses < 1 || maxPending < maxProcesses) {
+			throw new IllegalArgumentException();
+		}
+		this.graphViz = graphViz;
+		this.executor = newExecutor();
+		this.processes = new Semaphore(maxProcesses, true);
+		this.pending = new Semaphore(maxPending, true);
+	}
+
+	/**
+	 * Creates graph image same as GraphViz.createGraphImage(String, Object).
+	 * Image drawn with layout reuse or component layout holds one dot
+	 * process while all its dot runs finish.
+	 * @param fileName
+	 * @param graph
+	 * @return future completed with image file
+	 */
+	public CompletableFuture<File> createGraphImage(String fileName, Object graph) {
+		return submit(() -> {
+			graphViz.checkSupported();
+			if(graphViz.drawsInSteps()) {
+				acquireProcess();
+				try {
+					return imageFile(graphViz.createGraphImage(fileName, graph));
+				} finally {
+					processes.release();
+				}
+			}
+			int dotId = graphViz.writeDotToFile(fileName, graph);
+			return writeImg(fileName, dotId);
+		});
+	}
+
+	public CompletableFuture<File> createGraphImage(Object graph) {
+		return createGraphImage(null, graph);
+	}
+
+	/**
+	 * Creates graph image from dot string same as
+	 * GraphViz.createGraphImage(String, String).
+	 * @param fileName
+	 * @param dotString
+	 * @return future completed with image file
+	 */
+	public CompletableFuture<File> createGraphImage(String fileName, String dotString) {
+		return submit(() -> {
+			graphViz.checkSupported();
+			int dotId = graphViz.writeDotToFile(fileName, dotString);
+			return writeImg(fileName, dotId);
+		});
+	}
+
+	public CompletableFuture<File> createGraphImage(String dotString) {
+		return createGraphImage(null, dotString);
+	}
+
+	/**
+	 * Renders graph image in memory same as GraphViz.renderToBytes(Object).
+	 * @param graph
+	 * @return future completed with image bytes
+	 */
+	public CompletableFuture<byte[]> renderToBytes(Object graph) {
+		return submit(() -> {
+			acquireProcess();
+			try {
+				return graphViz.renderToBytes(graph);
+			} finally {
+				processes.release();
+			}
+		});
+	}
+
+	/**
+	 * Stops accepting renders and waits for submitted renders to finish.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+		try {
+			while(!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+				//keep waiting, renders are bounded by dot processes
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private File writeImg(String fileName, int dotId) throws IOException, InterruptedException {
+		if(dotId == -1) {
+			throw new IOException("Dot file for "+(fileName != null ? fileName : "graph")+" was not written");
+		}
+		acquireProcess();
+		try {
+			return imageFile(graphViz.writeImg(fileName, dotId));
+		} finally {
+			processes.release();
+		}
+	}
+
+	private static File imageFile(RenderResult result) throws IOException {
+		if(!result.isSuccess()) {
+			throw new IOException("Image "+result.imageFile()+" was not created ("+result+")");
+		}
+		return new File(result.imageFile());
+	}
+
+	/**
+	 * Waits for free dot process, time spent waiting is passed
+	 * to listener of GraphViz.
+	 * @throws InterruptedException
+	 */
+	private void acquireProcess() throws InterruptedException {
+		long start = System.nanoTime();
+		processes.acquire();
+		graphViz.getListener().phase(GraphVizListener.Phase.QUEUE_WAIT, System.nanoTime() - start);
+	}
+
+	/**
+	 * Blocks while maximum number of renders is pending, then runs render
+	 * on executor.
+	 * @param render
+	 * @return future of render
+	 */
+	private <T> CompletableFuture<T> submit(Render<T> render) {
+		try {
+			long start = System.nanoTime();
+			pending.acquire();
+			graphViz.getListener().phase(GraphVizListener.Phase.QUEUE_WAIT, System.nanoTime() - start);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return CompletableFuture.failedFuture(e);
+		}
+
+		CompletableFuture<T> future = new CompletableFuture<>();
+		try {
+			executor.execute(() -> {
+				try {
+					future.complete(render.run());
+				} catch (Exception e) {
+					future.completeExceptionally(e);
+				} finally {
+					pending.release();
+				}
+			});
+		} catch (RuntimeException e) {
+			pending.release();
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Executor with one virtual thread per task, on JVMs without
+	 * virtual threads cached pool of daemon threads is used. Number
+	 * of threads is bounded by number of pending renders in both cases.
+	 * @return executor
+	 */
+	private static ExecutorService newExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(r -> {
+				Thread t = new Thread(r, "GraphViz-render");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+	@FunctionalInterface
+	private interface Render<T> {
+		T run() throws Exception;
+	}
+}
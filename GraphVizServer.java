@@ -0,0 +1,328 @@
+package GraphViz;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP server on loopback address that draws dot with GraphViz, so graphs
+ * of any size can be viewed in browser without outside services.
+ * <pre>
+ * POST /{token}/graphs[?type=svg]   dot in body, answered with 303 and
+ *                                   Location of image, URL is also in body
+ * GET  /{token}/graphs/{id}.{type}  image of dot stored under id, type is
+ *                                   svg, png, gif or jpg
+ * </pre>
+ * Token is random for each server and is part of uri(), so web pages
+ * opened in browser can't guess URLs of server. Requests whose Host is
+ * not loopback address of server are refused, so page of other host
+ * that resolves to loopback address can't read images.
+ * Id is hash of dot, so same dot always has same URL. Images are sent
+ * with ETag and requests with matching If-None-Match are answered with
+ * 304 without drawing image again. Drawn images are kept in memory cache
+ * and stored dots are bounded by size, least recently used are dropped.
+ */
+public class GraphVizServer implements AutoCloseable {
+	private static final String GRAPHS = "/graphs";
+	private static final String DEFAULT_TYPE = "svg";
+	private static final Map<String, String> CONTENT_TYPES = Map.of("svg", "image/svg+xml",
+			"png", "image/png", "gif", "image/gif", "jpg", "image/jpeg");
+	private static final long MAX_DOT_BYTES = 64L * 1024 * 1024;
+	private static final long MAX_STORED_DOT_BYTES = 256L * 1024 * 1024;
+	private static final long MAX_IMAGE_BYTES = 256L * 1024 * 1024;
+	private static final int ID_LENGTH = 32;
+	private static final int TOKEN_LENGTH = 32;
+
+	private final GraphViz graphViz;
+	private final HttpServer server;
+	//first part of path of every URL of server
+	private final String token = token();
+	private final ExecutorService executor;
+	private final RenderCache images = new RenderCache(MAX_IMAGE_BYTES);
+	//access order, first entry is least recently used
+	private final LinkedHashMap<String, String> dots = new LinkedHashMap<>(16, 0.75f, true);
+	private long dotBytes;
+	private volatile long lastUsed = System.nanoTime();
+	private volatile boolean closed;
+	private ScheduledExecutorService idleCheck;
+
+	/**
+	 * Starts server on free port of loopback address.
+	 * @param graphViz used for drawing
+	 * @throws IOException if server can't be started
+	 */
+	public GraphVizServer(GraphViz graphViz) throws IOException {
+		this(graphViz, 0);
+	}
+
+	/**
+	 * Starts server on port of loopback address.
+	 * @param graphViz used for drawing
+	 * @param port 0 for any free port
+	 * @throws IOException if server can't be started
+	 */
+	public GraphVizServer(GraphViz graphViz, int port) throws IOException {
+		this.graphViz = graphViz;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.executor = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "GraphViz-server");
+			t.setDaemon(true);
+			return t;
+		});
+		server.createContext("/"+token+GRAPHS, this::handle);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * @return address of server with its token, http://127.0.0.1:port/token/
+	 */
+	public URI uri() {
+		InetSocketAddress address = server.getAddress();
+		return URI.create("http://"+address.getHostString()+":"+address.getPort()+"/"+token+"/");
+	}
+
+	/**
+	 * Stores dot so its image can be requested from server.
+	 * @param dot
+	 * @param type svg, png, gif or jpg
+	 * @return URL of image
+	 */
+	public URI publish(String dot, String type) {
+		lastUsed = System.nanoTime();
+		if(!CONTENT_TYPES.containsKey(type)) {
+			throw new IllegalArgumentException("Image type "+type+" is not supported");
+		}
+		return uri().resolve(GRAPHS.substring(1)+"/"+store(dot)+"."+type);
+	}
+
+	public URI publish(String dot) {
+		return publish(dot, DEFAULT_TYPE);
+	}
+
+	/**
+	 * Closes server when it gets no requests for given time. Server
+	 * keeps JVM running while it is open, so program that only shows
+	 * graphs in browser ends some time after browser got them.
+	 * @param idleMillis
+	 */
+	public synchronized void closeWhenIdle(long idleMillis) {
+		if(idleCheck != null || closed) {
+			return;
+		}
+		idleCheck = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "GraphViz-server-idle");
+			t.setDaemon(true);
+			return t;
+		});
+		long period = Math.max(1, idleMillis / 10);
+		idleCheck.scheduleAtFixedRate(() -> {
+			if(System.nanoTime() - lastUsed >= TimeUnit.MILLISECONDS.toNanos(idleMillis)) {
+				close();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	public boolean isOpen() {
+		return !closed;
+	}
+
+	@Override
+	public synchronized void close() {
+		if(closed) {
+			return;
+		}
+		closed = true;
+		server.stop(0);
+		executor.shutdownNow();
+		if(idleCheck != null) {
+			idleCheck.shutdownNow();
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		lastUsed = System.nanoTime();
+		try {
+			if(!isLocalHost(exchange.getRequestHeaders().getFirst("Host"))) {
+				sendText(exchange, 403, "Host is not loopback address of server");
+				return;
+			}
+			String method = exchange.getRequestMethod();
+			//context of handler starts with token
+			String path = exchange.getRequestURI().getPath().substring(token.length() + 1);
+			if("POST".equals(method) && (path.equals(GRAPHS) || path.equals(GRAPHS+"/"))) {
+				post(exchange);
+			} else if("GET".equals(method) && path.startsWith(GRAPHS+"/")) {
+				get(exchange, path.substring(GRAPHS.length() + 1));
+			} else {
+				sendText(exchange, 405, "Use POST "+GRAPHS+" or GET "+GRAPHS+"/{id}.{type}");
+			}
+		} catch (IOException | RuntimeException e) {
+			//response may be partly sent, client sees closed connection
+			System.err.println("Error: request "+exchange.getRequestURI()+" failed: "+e);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void post(HttpExchange exchange) throws IOException {
+		String type = queryType(exchange.getRequestURI().getRawQuery());
+		if(!CONTENT_TYPES.containsKey(type)) {
+			sendText(exchange, 400, "Image type "+type+" is not supported");
+			return;
+		}
+		byte[] body;
+		try (InputStream in = exchange.getRequestBody()) {
+			body = in.readNBytes((int) MAX_DOT_BYTES + 1);
+		}
+		if(body.length > MAX_DOT_BYTES) {
+			sendText(exchange, 413, "Dot is larger than "+MAX_DOT_BYTES+" bytes");
+			return;
+		}
+		String location = GRAPHS.substring(1)+"/"+store(new String(body, StandardCharsets.UTF_8))+"."+type;
+		exchange.getResponseHeaders().set("Location", "/"+token+"/"+location);
+		sendText(exchange, 303, uri().resolve(location).toString());
+	}
+
+	/**
+	 * @param host value of Host header
+	 * @return true if host is 127.0.0.1, localhost or loopback address of
+	 * server, with port of server
+	 */
+	private boolean isLocalHost(String host) {
+		if(host == null) {
+			return false;
+		}
+		InetSocketAddress address = server.getAddress();
+		String port = ":"+address.getPort();
+		String h = host.trim().toLowerCase(Locale.ROOT);
+		if(!h.endsWith(port)) {
+			return false;
+		}
+		h = h.substring(0, h.length() - port.length());
+		String loopback = address.getHostString();
+		return h.equals("127.0.0.1") || h.equals("localhost") || h.equals(loopback)
+				|| h.equals("["+loopback+"]") || h.equals("[::1]");
+	}
+
+	private void get(HttpExchange exchange, String name) throws IOException {
+		int dot = name.lastIndexOf('.');
+		String id = dot > 0 ? name.substring(0, dot) : name;
+		String type = dot > 0 ? name.substring(dot + 1) : DEFAULT_TYPE;
+		String contentType = CONTENT_TYPES.get(type);
+		if(contentType == null) {
+			sendText(exchange, 400, "Image type "+type+" is not supported");
+			return;
+		}
+		String source;
+		synchronized (this) {
+			source = dots.get(id);
+		}
+		if(source == null) {
+			sendText(exchange, 404, "No graph "+id+", POST its dot to "+GRAPHS+" first");
+			return;
+		}
+
+		//id is hash of dot, so image of same id and type does not change
+		String etag = "\""+id+"."+type+"\"";
+		Headers headers = exchange.getResponseHeaders();
+		headers.set("ETag", etag);
+		headers.set("Cache-Control", "no-cache");
+		String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+		if(ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+			exchange.sendResponseHeaders(304, -1);
+			return;
+		}
+
+		byte[] image;
+		try {
+			image = images.get(id+"."+type, () -> graphViz.renderToBytes(source, type));
+		} catch (IOException e) {
+			headers.remove("ETag");
+			sendText(exchange, 500, "Graph could not be drawn: "+e.getMessage());
+			return;
+		}
+		headers.set("Content-Type", contentType);
+		exchange.sendResponseHeaders(200, image.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(image);
+		}
+	}
+
+	/**
+	 * Keeps dot under its hash, least recently used dots are dropped when
+	 * stored dots grow too large.
+	 * @param dot
+	 * @return id of dot
+	 */
+	private synchronized String store(String dot) {
+		String id = id(dot);
+		if(dots.put(id, dot) == null) {
+			dotBytes += dot.length();
+			Iterator<String> it = dots.values().iterator();
+			while(dotBytes > MAX_STORED_DOT_BYTES && dots.size() > 1) {
+				dotBytes -= it.next().length();
+				it.remove();
+			}
+		}
+		return id;
+	}
+
+	private static String id(String dot) {
+		MessageDigest md = RenderCache.newDigest();
+		return hex(md.digest(dot.getBytes(StandardCharsets.UTF_8)), ID_LENGTH);
+	}
+
+	private static String token() {
+		byte[] random = new byte[TOKEN_LENGTH / 2];
+		new SecureRandom().nextBytes(random);
+		return hex(random, TOKEN_LENGTH);
+	}
+
+	private static String hex(byte[] bytes, int length) {
+		StringBuilder sb = new StringBuilder(length);
+		for(int i = 0; i < length / 2; i++) {
+			sb.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(bytes[i] & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	private static String queryType(String query) {
+		if(query != null) {
+			for(String param : query.split("&")) {
+				if(param.startsWith("type=")) {
+					return param.substring("type=".length());
+				}
+			}
+		}
+		return DEFAULT_TYPE;
+	}
+
+	private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+		byte[] bytes = (text+"\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+}
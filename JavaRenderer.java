@@ -0,0 +1,330 @@
+package GraphViz;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Draws dot without GraphViz, in process. Dot is read by DotGraph, laid out
+ * by ForceLayout and drawn as SVG or as png, jpg or gif image.
+ * Vertices are drawn as circles with their names and edges as straight
+ * lines, names and edge labels are left out of large graphs so drawing
+ * stays readable.
+ */
+final class JavaRenderer {
+	private static final long SEED = 42;
+	/** pixels for ideal edge length of layout */
+	private static final double EDGE_LENGTH = 60;
+	private static final int MARGIN = 20;
+	private static final int MAX_RASTER_SIZE = 4096;
+	private static final int MAX_SVG_SIZE = 32768;
+	private static final int LABELED_VERTICES = 1000;
+	private static final int LABELED_EDGES = 1000;
+	private static final int ANTIALIASED_EDGES = 50_000;
+	private static final double RADIUS = 12;
+	private static final double ARROW = 8;
+
+	private final DotGraph graph;
+	private final String fileType;
+	private final double[] xy;
+	private final double scale;
+	private final double minX;
+	private final double minY;
+	private final int width;
+	private final int height;
+	private final boolean labeled;
+	private final double radius;
+
+	private JavaRenderer(DotGraph graph, double[] xy, String fileType) {
+		this.graph = graph;
+		this.fileType = fileType;
+		int n = graph.vertexCount();
+		this.xy = xy;
+
+		double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE;
+		double x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE;
+		for(int v = 0; v < n; v++) {
+			x0 = Math.min(x0, xy[2 * v]);
+			x1 = Math.max(x1, xy[2 * v]);
+			y0 = Math.min(y0, xy[2 * v + 1]);
+			y1 = Math.max(y1, xy[2 * v + 1]);
+		}
+		if(n == 0) {
+			x0 = y0 = x1 = y1 = 0;
+		}
+		double extent = Math.max(x1 - x0, y1 - y0);
+		int maxSize = "svg".equals(fileType) ? MAX_SVG_SIZE : MAX_RASTER_SIZE;
+		double s = EDGE_LENGTH;
+		if(extent * s > maxSize - 2 * MARGIN) {
+			s = (maxSize - 2 * MARGIN) / extent;
+		}
+		this.scale = s;
+		this.minX = x0;
+		this.minY = y0;
+		this.labeled = n <= LABELED_VERTICES;
+		this.radius = labeled ? RADIUS : Math.max(1, Math.min(4, s / 5));
+		this.width = (int) Math.ceil((x1 - x0) * s + 2 * (MARGIN + radius));
+		this.height = (int) Math.ceil((y1 - y0) * s + 2 * (MARGIN + radius));
+	}
+
+	/**
+	 * Draws dot read from in and writes image to out.
+	 * @param in dot, not closed
+	 * @param fileType svg, png, jpg or gif
+	 * @param out image, not closed
+	 * @throws IOException if dot can't be read or image written
+	 */
+	static void render(InputStream in, String fileType, OutputStream out) throws IOException {
+		render(in, Collections.singletonMap(fileType, out));
+	}
+
+	/**
+	 * Lays out dot read from in once and writes image of each type.
+	 * @param in dot, not closed
+	 * @param outs images by file type, not closed
+	 * @throws IOException if dot can't be read or image written
+	 */
+	static void render(InputStream in, Map<String, OutputStream> outs) throws IOException {
+		DotGraph graph = DotGraph.read(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+		double[] xy = ForceLayout.layout(graph.vertexCount(), graph.from, graph.to, SEED);
+		for(Map.Entry<String, OutputStream> out : outs.entrySet()) {
+			JavaRenderer renderer = new JavaRenderer(graph, xy, out.getKey());
+			if("svg".equals(out.getKey())) {
+				renderer.writeSvg(out.getValue());
+			} else {
+				renderer.writeRaster(out.getValue());
+			}
+		}
+	}
+
+	private double x(int v) {
+		return (xy[2 * v] - minX) * scale + MARGIN + radius;
+	}
+
+	private double y(int v) {
+		return (xy[2 * v + 1] - minY) * scale + MARGIN + radius;
+	}
+
+	private void writeSvg(OutputStream out) throws IOException {
+		Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+		w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		w.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\""+width+"\" height=\""+height
+				+ "\" viewBox=\"0 0 "+width+" "+height+"\">\n");
+		if(graph.directed) {
+			w.write("<defs><marker id=\"a\" viewBox=\"0 0 10 10\" refX=\"10\" refY=\"5\" markerWidth=\""+ARROW
+					+ "\" markerHeight=\""+ARROW+"\" markerUnits=\"userSpaceOnUse\" orient=\"auto\">"
+					+ "<path d=\"M0,0L10,5L0,10z\"/></marker></defs>\n");
+		}
+		w.write("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n");
+
+		w.write("<g stroke=\"black\" stroke-width=\""+(labeled ? 1 : 0.5)+"\""
+				+ (graph.directed ? " marker-end=\"url(#a)\"" : "")+">\n");
+		for(int e = 0; e < graph.edgeCount(); e++) {
+			int v = graph.from[e];
+			int u = graph.to[e];
+			if(v == u) {
+				continue;
+			}
+			double[] line = line(v, u);
+			w.write("<line x1=\"");
+			w.write(coordinate(line[0]));
+			w.write("\" y1=\"");
+			w.write(coordinate(line[1]));
+			w.write("\" x2=\"");
+			w.write(coordinate(line[2]));
+			w.write("\" y2=\"");
+			w.write(coordinate(line[3]));
+			w.write("\"/>\n");
+		}
+		w.write("</g>\n");
+
+		if(graph.labels != null && graph.edgeCount() <= LABELED_EDGES) {
+			w.write("<g font-family=\"sans-serif\" font-size=\"10\" fill=\"#444\" text-anchor=\"middle\">\n");
+			for(int e = 0; e < graph.edgeCount(); e++) {
+				if(graph.labels[e] != null) {
+					w.write("<text x=\""+coordinate((x(graph.from[e]) + x(graph.to[e])) / 2)
+							+ "\" y=\""+coordinate((y(graph.from[e]) + y(graph.to[e])) / 2 - 2)+"\">"
+							+ escape(graph.labels[e])+"</text>\n");
+				}
+			}
+			w.write("</g>\n");
+		}
+
+		w.write("<g fill=\"white\" stroke=\"black\">\n");
+		for(int v = 0; v < graph.vertexCount(); v++) {
+			w.write("<circle cx=\"");
+			w.write(coordinate(x(v)));
+			w.write("\" cy=\"");
+			w.write(coordinate(y(v)));
+			w.write("\" r=\""+coordinate(radius)+"\"/>\n");
+		}
+		w.write("</g>\n");
+
+		if(labeled) {
+			w.write("<g font-family=\"sans-serif\" font-size=\"12\" text-anchor=\"middle\" dominant-baseline=\"central\">\n");
+			for(int v = 0; v < graph.vertexCount(); v++) {
+				w.write("<text x=\""+coordinate(x(v))+"\" y=\""+coordinate(y(v))+"\">"
+						+ escape(graph.names.get(v))+"</text>\n");
+			}
+			w.write("</g>\n");
+		}
+		w.write("</svg>\n");
+		w.flush();
+	}
+
+	private void writeRaster(OutputStream out) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		try {
+			g.setColor(Color.WHITE);
+			g.fillRect(0, 0, width, height);
+			if(graph.edgeCount() <= ANTIALIASED_EDGES) {
+				g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+				g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			}
+			g.setColor(Color.BLACK);
+			g.setStroke(new BasicStroke(labeled ? 1f : 0.5f));
+			Line2D.Double line = new Line2D.Double();
+			for(int e = 0; e < graph.edgeCount(); e++) {
+				int v = graph.from[e];
+				int u = graph.to[e];
+				if(v == u) {
+					continue;
+				}
+				double[] l = line(v, u);
+				line.setLine(l[0], l[1], l[2], l[3]);
+				g.draw(line);
+				if(graph.directed) {
+					g.fill(arrow(l));
+				}
+			}
+
+			if(graph.labels != null && graph.edgeCount() <= LABELED_EDGES) {
+				g.setColor(Color.DARK_GRAY);
+				g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 10));
+				for(int e = 0; e < graph.edgeCount(); e++) {
+					if(graph.labels[e] != null) {
+						drawCentered(g, graph.labels[e], (x(graph.from[e]) + x(graph.to[e])) / 2,
+								(y(graph.from[e]) + y(graph.to[e])) / 2 - 6);
+					}
+				}
+			}
+
+			Ellipse2D.Double circle = new Ellipse2D.Double();
+			g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+			for(int v = 0; v < graph.vertexCount(); v++) {
+				circle.setFrame(x(v) - radius, y(v) - radius, 2 * radius, 2 * radius);
+				g.setColor(Color.WHITE);
+				g.fill(circle);
+				g.setColor(Color.BLACK);
+				g.draw(circle);
+				if(labeled) {
+					drawCentered(g, graph.names.get(v), x(v), y(v));
+				}
+			}
+		} finally {
+			g.dispose();
+		}
+		if(!ImageIO.write(image, fileType, out)) {
+			throw new IOException("Image type "+fileType+" can't be written");
+		}
+	}
+
+	/**
+	 * Line between vertices, shortened so it ends at border of circle.
+	 * @return x1, y1, x2, y2
+	 */
+	private double[] line(int v, int u) {
+		double x1 = x(v), y1 = y(v), x2 = x(u), y2 = y(u);
+		double d = Math.hypot(x2 - x1, y2 - y1);
+		if(d > 2 * radius) {
+			double ux = (x2 - x1) / d;
+			double uy = (y2 - y1) / d;
+			x1 += ux * radius;
+			y1 += uy * radius;
+			x2 -= ux * radius;
+			y2 -= uy * radius;
+		}
+		return new double[] {x1, y1, x2, y2};
+	}
+
+	private static Path2D arrow(double[] l) {
+		double d = Math.hypot(l[2] - l[0], l[3] - l[1]);
+		Path2D.Double p = new Path2D.Double();
+		if(d == 0) {
+			return p;
+		}
+		double ux = (l[2] - l[0]) / d;
+		double uy = (l[3] - l[1]) / d;
+		double bx = l[2] - ux * ARROW;
+		double by = l[3] - uy * ARROW;
+		p.moveTo(l[2], l[3]);
+		p.lineTo(bx - uy * ARROW / 2, by + ux * ARROW / 2);
+		p.lineTo(bx + uy * ARROW / 2, by - ux * ARROW / 2);
+		p.closePath();
+		return p;
+	}
+
+	private static void drawCentered(Graphics2D g, String text, double x, double y) {
+		FontMetrics m = g.getFontMetrics();
+		g.drawString(text, (float) (x - m.stringWidth(text) / 2.0),
+				(float) (y + (m.getAscent() - m.getDescent()) / 2.0));
+	}
+
+	/**
+	 * Coordinate rounded to one decimal.
+	 */
+	private static String coordinate(double c) {
+		long tenths = Math.round(c * 10);
+		return tenths % 10 == 0 ? Long.toString(tenths / 10) : (tenths / 10)+"."+(tenths % 10);
+	}
+
+	/**
+	 * Escapes text for SVG and HTML.
+	 * @param s
+	 * @return escaped text
+	 */
+	static String escape(String s) {
+		StringBuilder sb = new StringBuilder(s.length());
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '&':
+				sb.append("&amp;");
+				break;
+			case '<':
+				sb.append("&lt;");
+				break;
+			case '>':
+				sb.append("&gt;");
+				break;
+			case '"':
+				sb.append("&quot;");
+				break;
+			default:
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+}
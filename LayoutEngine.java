@@ -0,0 +1,58 @@
+package GraphViz;
+
+/**
+ * Layout engines of GraphViz, passed to dot with -K. Engines are ordered
+ * from slowest to cheapest for large graphs: dot ranks vertices and
+ * minimizes edge crossings, neato minimizes stress between all pairs of
+ * vertices and sfdp places vertices by multilevel force directed layout.
+ */
+public enum LayoutEngine {
+	DOT("dot"),
+	NEATO("neato"),
+	SFDP("sfdp");
+
+	/** largest graph laid out by dot when engine is chosen by size */
+	static final int DOT_MAX_VERTICES = 500;
+	static final long DOT_MAX_EDGES = 2_000;
+	/** largest graph laid out by neato when engine is chosen by size */
+	static final int NEATO_MAX_VERTICES = 3_000;
+	static final long NEATO_MAX_EDGES = 20_000;
+
+	private final String command;
+
+	LayoutEngine(String command) {
+		this.command = command;
+	}
+
+	/**
+	 * @return name of engine as given to -K
+	 */
+	public String command() {
+		return command;
+	}
+
+	/**
+	 * Engine for graph of given size, dot for small graphs, neato for
+	 * medium and sfdp for large graphs.
+	 * @param vertices -1 if not known
+	 * @param edges -1 if not known
+	 * @return engine
+	 */
+	public static LayoutEngine forSize(int vertices, long edges) {
+		if(vertices <= DOT_MAX_VERTICES && edges <= DOT_MAX_EDGES) {
+			return DOT;
+		}
+		if(vertices <= NEATO_MAX_VERTICES && edges <= NEATO_MAX_EDGES) {
+			return NEATO;
+		}
+		return SFDP;
+	}
+
+	/**
+	 * @return next cheaper engine, null for sfdp
+	 */
+	public LayoutEngine cheaper() {
+		int next = ordinal() + 1;
+		return next < values().length ? values()[next] : null;
+	}
+}
@@ -0,0 +1,118 @@
+package GraphViz;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Positions of vertices from earlier layout of graph, in points. Positions
+ * are read from -Tplain output of GraphViz and written back to dot as
+ * pinned pos attributes, so neato keeps known vertices where they were
+ * and only places new ones.
+ */
+final class LayoutPositions {
+	/** points per inch, plain output gives coordinates in inches */
+	static final double POINTS_PER_INCH = 72;
+
+	//x and y of vertex v at 2v and 2v+1, NaN if position is not known
+	private final double[] xy;
+
+	private LayoutPositions(double[] xy) {
+		this.xy = xy;
+	}
+
+	/**
+	 * @return positions without any vertex
+	 */
+	static LayoutPositions empty() {
+		return new LayoutPositions(new double[0]);
+	}
+
+	/**
+	 * Reads positions of vertices from -Tplain output, vertices whose
+	 * names are not numbers are skipped.
+	 * @param in plain output, not closed
+	 * @return positions
+	 * @throws IOException
+	 */
+	static LayoutPositions readPlain(BufferedReader in) throws IOException {
+		double[] xy = new double[0];
+		String line;
+		while((line = in.readLine()) != null) {
+			if(!line.startsWith("node ")) {
+				continue;
+			}
+			//node name x y width height label style shape color fillcolor
+			String[] f = line.split(" ", 5);
+			int v;
+			try {
+				v = Integer.parseInt(f[1]);
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			if(v < 0 || f.length < 4) {
+				continue;
+			}
+			if(2 * v + 1 >= xy.length) {
+				int length = xy.length;
+				xy = Arrays.copyOf(xy, Math.max(2 * v + 2, 2 * length));
+				Arrays.fill(xy, length, xy.length, Double.NaN);
+			}
+			xy[2 * v] = Double.parseDouble(f[2]) * POINTS_PER_INCH;
+			xy[2 * v + 1] = Double.parseDouble(f[3]) * POINTS_PER_INCH;
+		}
+		return new LayoutPositions(xy);
+	}
+
+	/**
+	 * Positions of this layout replaced by positions of newer layout,
+	 * vertices missing from newer layout keep their old positions.
+	 * @param newer
+	 * @return merged positions
+	 */
+	LayoutPositions merge(LayoutPositions newer) {
+		double[] merged = Arrays.copyOf(xy, Math.max(xy.length, newer.xy.length));
+		Arrays.fill(merged, xy.length, merged.length, Double.NaN);
+		for(int i = 0; i < newer.xy.length; i++) {
+			if(!Double.isNaN(newer.xy[i])) {
+				merged[i] = newer.xy[i];
+			}
+		}
+		return new LayoutPositions(merged);
+	}
+
+	boolean isEmpty() {
+		for(double c : xy) {
+			if(!Double.isNaN(c)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes pinned position of each drawn vertex that has one.
+	 * @param drawn vertices that are ends of written edges
+	 * @param encoder
+	 * @return true if every drawn vertex got position
+	 */
+	boolean writePins(BitSet drawn, DotEncoder encoder) {
+		boolean all = true;
+		for(int v = drawn.nextSetBit(0); v >= 0; v = drawn.nextSetBit(v + 1)) {
+			if(2 * v + 1 >= xy.length || Double.isNaN(xy[2 * v])) {
+				all = false;
+				continue;
+			}
+			encoder.writeAscii("    "+v+" [pos=\""+coordinate(xy[2 * v])+","+coordinate(xy[2 * v + 1])+"!\"];\n");
+		}
+		return all;
+	}
+
+	private static String coordinate(double c) {
+		long tenths = Math.round(c * 10);
+		String sign = tenths < 0 ? "-" : "";
+		tenths = Math.abs(tenths);
+		return sign+(tenths % 10 == 0 ? Long.toString(tenths / 10) : (tenths / 10)+"."+(tenths % 10));
+	}
+}
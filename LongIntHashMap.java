@@ -0,0 +1,114 @@
+package GraphViz;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from long to int without boxing, keys are
+ * looked up by linear probing. Only what graph reductions need is
+ * supported, values can't be removed.
+ */
+final class LongIntHashMap {
+	private static final float LOAD_FACTOR = 0.5f;
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+	private int mask;
+	//EMPTY key is kept outside of table
+	private boolean hasEmptyKey;
+	private int emptyKeyValue;
+
+	LongIntHashMap(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(16, (int) Math.min(1 << 30, expected / LOAD_FACTOR)) - 1) << 1;
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		mask = capacity - 1;
+	}
+
+	/**
+	 * @param key
+	 * @param missing returned when there is no value for key
+	 * @return value of key
+	 */
+	int get(long key, int missing) {
+		if(key == EMPTY) {
+			return hasEmptyKey ? emptyKeyValue : missing;
+		}
+		for(int i = slot(key); ; i = (i + 1) & mask) {
+			long k = keys[i];
+			if(k == key) {
+				return values[i];
+			}
+			if(k == EMPTY) {
+				return missing;
+			}
+		}
+	}
+
+	/**
+	 * Puts value of key unless key already has value.
+	 * @param key
+	 * @param value
+	 * @return value key had before, or value if key was added
+	 */
+	int putIfAbsent(long key, int value) {
+		if(key == EMPTY) {
+			if(!hasEmptyKey) {
+				hasEmptyKey = true;
+				emptyKeyValue = value;
+				size++;
+			}
+			return emptyKeyValue;
+		}
+		for(int i = slot(key); ; i = (i + 1) & mask) {
+			long k = keys[i];
+			if(k == key) {
+				return values[i];
+			}
+			if(k == EMPTY) {
+				keys[i] = key;
+				values[i] = value;
+				if(++size > keys.length * LOAD_FACTOR) {
+					grow();
+				}
+				return value;
+			}
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	private int slot(long key) {
+		//finalizer of MurmurHash3, vertex pairs differ mostly in low bits
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key & mask;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new int[oldValues.length * 2];
+		Arrays.fill(keys, EMPTY);
+		mask = keys.length - 1;
+		for(int j = 0; j < oldKeys.length; j++) {
+			long key = oldKeys[j];
+			if(key != EMPTY) {
+				int i = slot(key);
+				while(keys[i] != EMPTY) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = key;
+				values[i] = oldValues[j];
+			}
+		}
+	}
+}
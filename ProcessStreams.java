@@ -0,0 +1,144 @@
+package GraphViz;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads standard output and standard error of dot processes on shared
+ * daemon threads, so dot never blocks on full pipe while it is waited for.
+ * Copy buffers are pooled and reused by all processes. Standard error is
+ * kept only up to MAX_ERROR_BYTES, rest of it is read and dropped.
+ */
+final class ProcessStreams {
+	static final int BUFFER_SIZE = 8 * 1024;
+	static final int MAX_ERROR_BYTES = 4 * 1024;
+	private static final int MAX_POOLED_BUFFERS = 64;
+
+	private static final ConcurrentLinkedQueue<byte[]> BUFFERS = new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger POOLED = new AtomicInteger();
+	private static final ExecutorService READERS = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "GraphViz-dot-reader");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private ProcessStreams() {
+	}
+
+	/**
+	 * Copies stream to out on reader thread, stream is closed at its end.
+	 * @param in
+	 * @param out null to drop what is read
+	 * @return completed when stream ends
+	 */
+	static CompletableFuture<Void> copy(InputStream in, OutputStream out) {
+		return CompletableFuture.runAsync(() -> read(in, out), READERS);
+	}
+
+	/**
+	 * Reads stream on reader thread and keeps its first maxBytes bytes.
+	 * @param in
+	 * @param maxBytes
+	 * @return completed with text read, ... is appended if it was cut
+	 */
+	static CompletableFuture<String> capture(InputStream in, int maxBytes) {
+		return CompletableFuture.supplyAsync(() -> {
+			CappedOutputStream out = new CappedOutputStream(maxBytes);
+			read(in, out);
+			return out.toString();
+		}, READERS);
+	}
+
+	/**
+	 * Waits for reader, IOException of reader is thrown as it is.
+	 * @param reader
+	 * @return result of reader
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	static <T> T await(CompletableFuture<T> reader) throws IOException, InterruptedException {
+		try {
+			return reader.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) cause).getCause();
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	private static void read(InputStream in, OutputStream out) {
+		byte[] buffer = acquire();
+		try (InputStream stream = in) {
+			int n;
+			while((n = stream.read(buffer)) != -1) {
+				if(out != null) {
+					out.write(buffer, 0, n);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			release(buffer);
+		}
+	}
+
+	private static byte[] acquire() {
+		byte[] buffer = BUFFERS.poll();
+		if(buffer == null) {
+			return new byte[BUFFER_SIZE];
+		}
+		POOLED.decrementAndGet();
+		return buffer;
+	}
+
+	private static void release(byte[] buffer) {
+		if(POOLED.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+			BUFFERS.offer(buffer);
+		} else {
+			POOLED.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Keeps first bytes written to it and counts the rest.
+	 */
+	private static final class CappedOutputStream extends OutputStream {
+		private final byte[] kept;
+		private int size;
+		private boolean cut;
+
+		CappedOutputStream(int maxBytes) {
+			kept = new byte[maxBytes];
+		}
+
+		@Override
+		public void write(int b) {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			int n = Math.min(len, kept.length - size);
+			System.arraycopy(b, off, kept, size, n);
+			size += n;
+			cut |= n < len;
+		}
+
+		@Override
+		public String toString() {
+			String text = new String(kept, 0, size, StandardCharsets.UTF_8);
+			return cut ? text+"..." : text;
+		}
+	}
+}
@@ -0,0 +1,545 @@
+package GraphViz;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.function.IntConsumer;
+
+/**
+ * Graph sources and vertex selections used by graph reductions.
+ */
+final class ReducedGraphSources {
+
+	private ReducedGraphSources() {
+	}
+
+	/**
+	 * Breadth first search from seeds limited to hops levels.
+	 * @param source
+	 * @param seeds
+	 * @param hops
+	 * @return reached vertices
+	 */
+	static BitSet neighbourhood(GraphSource source, int[] seeds, int hops) {
+		int n = source.vertexCount();
+		BitSet inside = new BitSet(n);
+		IntQueue queue = new IntQueue(Math.max(16, seeds.length));
+		for(int s : seeds) {
+			if(s >= 0 && s < n && !inside.get(s)) {
+				inside.set(s);
+				queue.add(s);
+			}
+		}
+
+		IntConsumer visit = w -> {
+			if(!inside.get(w)) {
+				inside.set(w);
+				queue.add(w);
+			}
+		};
+		int head = 0;
+		for(int hop = 0; hop < hops && head < queue.size; hop++) {
+			int levelEnd = queue.size;
+			while(head < levelEnd) {
+				source.forEachNeighbor(queue.values[head++], visit);
+			}
+		}
+		return inside;
+	}
+
+	/**
+	 * Counts degrees in one pass over edges and keeps count vertices with
+	 * largest degree in heap whose root is the worst kept vertex.
+	 * @param source
+	 * @param count
+	 * @return kept vertices
+	 */
+	static BitSet topDegree(GraphSource source, int count) {
+		int n = source.vertexCount();
+		int[] degree = new int[n];
+		source.forEachEdge((v, w, weight) -> {
+			degree[v]++;
+			degree[w]++;
+		});
+
+		int k = Math.min(count, n);
+		int[] heap = new int[k];
+		int size = 0;
+		for(int v = 0; v < n; v++) {
+			if(size < k) {
+				heap[size] = v;
+				siftUp(heap, size++, degree);
+			} else if(k > 0 && worse(heap[0], v, degree)) {
+				heap[0] = v;
+				siftDown(heap, size, degree);
+			}
+		}
+
+		BitSet inside = new BitSet(n);
+		for(int i = 0; i < size; i++) {
+			inside.set(heap[i]);
+		}
+		return inside;
+	}
+
+	/**
+	 * @return true if vertex a has smaller degree than b, or same degree
+	 * and larger number
+	 */
+	private static boolean worse(int a, int b, int[] degree) {
+		return degree[a] < degree[b] || (degree[a] == degree[b] && a > b);
+	}
+
+	private static void siftUp(int[] heap, int i, int[] degree) {
+		int v = heap[i];
+		while(i > 0) {
+			int parent = (i - 1) >>> 1;
+			if(!worse(v, heap[parent], degree)) {
+				break;
+			}
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = v;
+	}
+
+	private static void siftDown(int[] heap, int size, int[] degree) {
+		int v = heap[0];
+		int i = 0;
+		while(true) {
+			int child = 2 * i + 1;
+			if(child >= size) {
+				break;
+			}
+			if(child + 1 < size && worse(heap[child + 1], heap[child], degree)) {
+				child++;
+			}
+			if(!worse(heap[child], v, degree)) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = v;
+	}
+
+	/**
+	 * Subgraph induced by set of vertices, edges are kept if both
+	 * of their vertices are in set.
+	 */
+	static final class Induced implements GraphSource {
+		private final GraphSource source;
+		private final BitSet inside;
+
+		Induced(GraphSource source, BitSet inside) {
+			this.source = source;
+			this.inside = inside;
+		}
+
+		@Override
+		public int vertexCount() {
+			return source.vertexCount();
+		}
+
+		@Override
+		public boolean isDirected() {
+			return source.isDirected();
+		}
+
+		@Override
+		public boolean isWeighted() {
+			return source.isWeighted();
+		}
+
+		@Override
+		public boolean hasCountWeights() {
+			return source.hasCountWeights();
+		}
+
+		@Override
+		public boolean visitsEdgesByVertex() {
+			return source.visitsEdgesByVertex();
+		}
+
+		@Override
+		public void forEachNeighbor(int v, IntConsumer action) {
+			if(inside.get(v)) {
+				source.forEachNeighbor(v, w -> {
+					if(inside.get(w)) {
+						action.accept(w);
+					}
+				});
+			}
+		}
+
+		@Override
+		public void forEachEdge(int v, EdgeConsumer action) {
+			if(inside.get(v)) {
+				source.forEachEdge(v, (from, to, weight) -> {
+					if(inside.get(to)) {
+						action.accept(from, to, weight);
+					}
+				});
+			}
+		}
+
+		/**
+		 * Only vertices in set are visited when source visits edges
+		 * vertex by vertex.
+		 */
+		@Override
+		public void forEachEdge(EdgeConsumer action) {
+			if(!source.visitsEdgesByVertex()) {
+				source.forEachEdge((v, w, weight) -> {
+					if(inside.get(v) && inside.get(w)) {
+						action.accept(v, w, weight);
+					}
+				});
+				return;
+			}
+
+			EdgeConsumer each = isDirected() ? action : (v, w, weight) -> {
+				if(v < w) {
+					action.accept(v, w, weight);
+				}
+			};
+			for(int v = inside.nextSetBit(0); v >= 0; v = inside.nextSetBit(v + 1)) {
+				forEachEdge(v, each);
+			}
+		}
+	}
+
+	/**
+	 * Edges chosen by reservoir sampling in one pass over edges of source.
+	 * Edges are kept in arrays, so adjacency of vertex is found by
+	 * scanning all kept edges.
+	 */
+	static final class Sample implements GraphSource, GraphSource.EdgeConsumer {
+		private static final int INITIAL_CAPACITY = 64;
+
+		private final int vertexCount;
+		private final boolean directed;
+		private final boolean weighted;
+		private final boolean countWeights;
+		private final SplittableRandom random;
+		private final int maxEdges;
+		//grow as edges are kept, up to maxEdges
+		private int[] from;
+		private int[] to;
+		private double[] weights;
+		//position of kept edge among all edges of source
+		private long[] index;
+		private long seen;
+		private int size;
+		private EdgeIndex byVertex;
+
+		private Sample(GraphSource source, int maxEdges, long seed) {
+			this.vertexCount = source.vertexCount();
+			this.directed = source.isDirected();
+			this.weighted = source.isWeighted();
+			this.countWeights = source.hasCountWeights();
+			this.random = new SplittableRandom(seed);
+			this.maxEdges = maxEdges;
+			int capacity = Math.min(maxEdges, INITIAL_CAPACITY);
+			this.from = new int[capacity];
+			this.to = new int[capacity];
+			this.weights = weighted ? new double[capacity] : null;
+			this.index = new long[capacity];
+		}
+
+		static Sample of(GraphSource source, int maxEdges, long seed) {
+			Sample sample = new Sample(source, maxEdges, seed);
+			source.forEachEdge(sample);
+			sample.sortByIndex();
+			sample.byVertex = new EdgeIndex(sample.vertexCount, sample.from, sample.to, sample.size, sample.directed);
+			return sample;
+		}
+
+		/**
+		 * Reservoir step, called once for each edge of source.
+		 */
+		@Override
+		public void accept(int v, int w, double weight) {
+			long i = seen++;
+			int slot;
+			if(size < maxEdges) {
+				if(size == from.length) {
+					grow();
+				}
+				slot = size++;
+			} else {
+				long r = random.nextLong(i + 1);
+				if(r >= maxEdges) {
+					return;
+				}
+				slot = (int) r;
+			}
+			from[slot] = v;
+			to[slot] = w;
+			if(weighted) {
+				weights[slot] = weight;
+			}
+			index[slot] = i;
+		}
+
+		private void grow() {
+			int capacity = (int) Math.min(2L * size, maxEdges);
+			from = Arrays.copyOf(from, capacity);
+			to = Arrays.copyOf(to, capacity);
+			if(weighted) {
+				weights = Arrays.copyOf(weights, capacity);
+			}
+			index = Arrays.copyOf(index, capacity);
+		}
+
+		/**
+		 * Puts kept edges back in order they had in source.
+		 */
+		private void sortByIndex() {
+			long[] keys = new long[size];
+			for(int slot = 0; slot < size; slot++) {
+				keys[slot] = index[slot] * size + slot;
+			}
+			Arrays.sort(keys);
+			int[] f = Arrays.copyOf(from, size);
+			int[] t = Arrays.copyOf(to, size);
+			double[] wt = weighted ? Arrays.copyOf(weights, size) : null;
+			for(int i = 0; i < size; i++) {
+				int slot = (int) (keys[i] % size);
+				from[i] = f[slot];
+				to[i] = t[slot];
+				if(weighted) {
+					weights[i] = wt[slot];
+				}
+			}
+		}
+
+		@Override
+		public int vertexCount() {
+			return vertexCount;
+		}
+
+		@Override
+		public boolean isDirected() {
+			return directed;
+		}
+
+		@Override
+		public boolean isWeighted() {
+			return weighted;
+		}
+
+		@Override
+		public boolean hasCountWeights() {
+			return countWeights;
+		}
+
+		@Override
+		public boolean visitsEdgesByVertex() {
+			return false;
+		}
+
+		@Override
+		public void forEachNeighbor(int v, IntConsumer action) {
+			forEachEdge(v, (x, w, weight) -> action.accept(w));
+		}
+
+		@Override
+		public void forEachEdge(int v, EdgeConsumer action) {
+			for(int k = byVertex.start(v); k < byVertex.end(v); k++) {
+				int i = byVertex.edge(k);
+				action.accept(v, from[i] == v ? to[i] : from[i], weight(i));
+			}
+		}
+
+		@Override
+		public void forEachEdge(EdgeConsumer action) {
+			for(int i = 0; i < size; i++) {
+				action.accept(from[i], to[i], weight(i));
+			}
+		}
+
+		private double weight(int i) {
+			return weighted ? weights[i] : 1.0;
+		}
+	}
+
+	/**
+	 * Parallel edges collapsed into one edge, kept in order in which
+	 * first of them was visited. Edge of undirected graph is same edge
+	 * whichever vertex it is visited from.
+	 */
+	static final class Aggregated implements GraphSource, GraphSource.EdgeConsumer {
+		private final int vertexCount;
+		private final boolean directed;
+		private final GraphReduction.Aggregation aggregation;
+		private final LongIntHashMap slots;
+		private int[] from;
+		private int[] to;
+		private double[] values;
+		private int size;
+		private EdgeIndex byVertex;
+
+		private Aggregated(GraphSource source, GraphReduction.Aggregation aggregation) {
+			this.vertexCount = source.vertexCount();
+			this.directed = source.isDirected();
+			this.aggregation = aggregation;
+			int capacity = Math.max(16, Math.min(vertexCount, 1 << 20));
+			this.slots = new LongIntHashMap(capacity);
+			this.from = new int[capacity];
+			this.to = new int[capacity];
+			this.values = new double[capacity];
+		}
+
+		static Aggregated of(GraphSource source, GraphReduction.Aggregation aggregation) {
+			Aggregated aggregated = new Aggregated(source, aggregation);
+			source.forEachEdge(aggregated);
+			aggregated.byVertex = new EdgeIndex(aggregated.vertexCount, aggregated.from, aggregated.to,
+					aggregated.size, aggregated.directed);
+			return aggregated;
+		}
+
+		@Override
+		public void accept(int v, int w, double weight) {
+			int a = directed ? v : Math.min(v, w);
+			int b = directed ? w : Math.max(v, w);
+			long key = ((long) a << 32) | (b & 0xffffffffL);
+			int slot = slots.putIfAbsent(key, size);
+			if(slot == size) {
+				if(size == from.length) {
+					int capacity = size * 2;
+					from = Arrays.copyOf(from, capacity);
+					to = Arrays.copyOf(to, capacity);
+					values = Arrays.copyOf(values, capacity);
+				}
+				from[size] = v;
+				to[size] = w;
+				values[size] = aggregation == GraphReduction.Aggregation.COUNT ? 1 : weight;
+				size++;
+				return;
+			}
+			switch (aggregation) {
+			case COUNT:
+				values[slot]++;
+				break;
+			case SUM:
+				values[slot] += weight;
+				break;
+			case MIN:
+				values[slot] = Math.min(values[slot], weight);
+				break;
+			case MAX:
+				values[slot] = Math.max(values[slot], weight);
+				break;
+			}
+		}
+
+		@Override
+		public int vertexCount() {
+			return vertexCount;
+		}
+
+		@Override
+		public boolean isDirected() {
+			return directed;
+		}
+
+		/**
+		 * Count or aggregated weight is weight of edge.
+		 */
+		@Override
+		public boolean isWeighted() {
+			return true;
+		}
+
+		@Override
+		public boolean hasCountWeights() {
+			return aggregation == GraphReduction.Aggregation.COUNT;
+		}
+
+		@Override
+		public boolean visitsEdgesByVertex() {
+			return false;
+		}
+
+		@Override
+		public void forEachNeighbor(int v, IntConsumer action) {
+			forEachEdge(v, (x, w, weight) -> action.accept(w));
+		}
+
+		@Override
+		public void forEachEdge(int v, EdgeConsumer action) {
+			for(int k = byVertex.start(v); k < byVertex.end(v); k++) {
+				int i = byVertex.edge(k);
+				action.accept(v, from[i] == v ? to[i] : from[i], values[i]);
+			}
+		}
+
+		@Override
+		public void forEachEdge(EdgeConsumer action) {
+			for(int i = 0; i < size; i++) {
+				action.accept(from[i], to[i], values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Kept edges grouped by vertex like compressed sparse row, so edges of
+	 * vertex are found without scanning all kept edges. Edge of undirected
+	 * graph is listed at both of its ends, edges of vertex keep their order.
+	 */
+	private static final class EdgeIndex {
+		//edges of v are edges[start[v]] to edges[start[v + 1] - 1]
+		private final int[] start;
+		private final int[] edges;
+
+		EdgeIndex(int vertexCount, int[] from, int[] to, int size, boolean directed) {
+			start = new int[vertexCount + 1];
+			for(int i = 0; i < size; i++) {
+				start[from[i] + 1]++;
+				if(!directed && to[i] != from[i]) {
+					start[to[i] + 1]++;
+				}
+			}
+			for(int v = 0; v < vertexCount; v++) {
+				start[v + 1] += start[v];
+			}
+			int[] next = Arrays.copyOf(start, vertexCount);
+			edges = new int[start[vertexCount]];
+			for(int i = 0; i < size; i++) {
+				edges[next[from[i]]++] = i;
+				if(!directed && to[i] != from[i]) {
+					edges[next[to[i]]++] = i;
+				}
+			}
+		}
+
+		int start(int v) {
+			return v >= 0 && v < start.length - 1 ? start[v] : 0;
+		}
+
+		int end(int v) {
+			return v >= 0 && v < start.length - 1 ? start[v + 1] : 0;
+		}
+
+		int edge(int k) {
+			return edges[k];
+		}
+	}
+
+	private static final class IntQueue {
+		int[] values;
+		int size;
+
+		IntQueue(int capacity) {
+			values = new int[capacity];
+		}
+
+		void add(int v) {
+			if(size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = v;
+		}
+	}
+}
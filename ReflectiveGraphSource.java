@@ -0,0 +1,156 @@
+package GraphViz;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.function.IntConsumer;
+
+/**
+ * Graph sources over Graph, Digraph, EdgeWeightedGraph and
+ * EdgeWeightedDigraph objects, methods are called through accessors
+ * set up by GraphViz. Exceptions thrown by graph methods are wrapped
+ * in UndeclaredThrowableException.
+ */
+abstract class ReflectiveGraphSource implements GraphSource {
+	final Object graph;
+	final GraphAccessors accessors;
+	private final boolean directed;
+
+	private ReflectiveGraphSource(Object graph, GraphAccessors accessors, boolean directed) {
+		this.graph = graph;
+		this.accessors = accessors;
+		this.directed = directed;
+	}
+
+	@Override
+	public int vertexCount() {
+		try {
+			return accessors.numberOfVertices(graph.getClass()).invokeInt(graph);
+		} catch (ReflectiveOperationException e) {
+			throw new UndeclaredThrowableException(e);
+		}
+	}
+
+	@Override
+	public boolean isDirected() {
+		return directed;
+	}
+
+	/**
+	 * Graph or digraph with V() and adj(int v) returning Iterable<Integer>.
+	 */
+	static final class Adjacency extends ReflectiveGraphSource {
+		private final GraphAccessors.Accessor adj;
+
+		Adjacency(Object graph, GraphAccessors accessors, boolean directed)
+				throws NoSuchMethodException, IllegalAccessException {
+			super(graph, accessors, directed);
+			accessors.numberOfVertices(graph.getClass());
+			this.adj = accessors.adjacentVertices(graph.getClass());
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void forEachNeighbor(int v, IntConsumer action) {
+			Iterable<Integer> adjacent;
+			try {
+				adjacent = (Iterable<Integer>) adj.invoke(graph, v);
+			} catch (InvocationTargetException e) {
+				throw new UndeclaredThrowableException(e);
+			}
+			for(int w : adjacent) {
+				action.accept(w);
+			}
+		}
+	}
+
+	/**
+	 * Edge weighted graph or digraph with edges() returning Iterable of edge
+	 * objects, edge methods are resolved again only when class of edge changes.
+	 */
+	static final class EdgeWeighted extends ReflectiveGraphSource {
+		private final GraphAccessors.Accessor edges;
+
+		EdgeWeighted(Object graph, GraphAccessors accessors, boolean directed)
+				throws NoSuchMethodException, IllegalAccessException {
+			super(graph, accessors, directed);
+			this.edges = accessors.edges(graph.getClass());
+		}
+
+		@Override
+		public boolean isWeighted() {
+			return true;
+		}
+
+		/**
+		 * Edges are visited in order of edges(), not vertex by vertex.
+		 */
+		@Override
+		public boolean visitsEdgesByVertex() {
+			return false;
+		}
+
+		@Override
+		public void forEachNeighbor(int v, IntConsumer action) {
+			forEachEdge(v, (from, to, weight) -> action.accept(to));
+		}
+
+		/**
+		 * Visits edges returned by adj(v), (by default) adj is same method
+		 * name used for adjacent vertices of graph and digraph.
+		 */
+		@Override
+		public void forEachEdge(int v, EdgeConsumer action) {
+			try {
+				GraphAccessors.Accessor adj = accessors.adjacentVertices(graph.getClass());
+				visit((Iterable<?>) adj.invoke(graph, v), v, action);
+			} catch (ReflectiveOperationException e) {
+				throw new UndeclaredThrowableException(e);
+			}
+		}
+
+		@Override
+		public void forEachEdge(EdgeConsumer action) {
+			try {
+				visit((Iterable<?>) edges.invoke(graph), -1, action);
+			} catch (ReflectiveOperationException e) {
+				throw new UndeclaredThrowableException(e);
+			}
+		}
+
+		/**
+		 * @param edgeObjects
+		 * @param vertex edges are seen from, -1 for either()
+		 * @param action
+		 */
+		private void visit(Iterable<?> edgeObjects, int vertex, EdgeConsumer action)
+				throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+			boolean undirected = !isDirected();
+			Class<?> edgeClass = null;
+			GraphAccessors.Accessor weight = null;
+			GraphAccessors.Accessor from = null;
+			GraphAccessors.Accessor to = null;
+			for(Object edge : edgeObjects) {
+				if(edge.getClass() != edgeClass) {
+					edgeClass = edge.getClass();
+					weight = accessors.edgeWeight(edgeClass);
+					if(undirected) {
+						from = accessors.edgeWeightedGraphEither(edgeClass);
+						to = accessors.edgeWeightedGraphOther(edgeClass);
+					} else {
+						from = accessors.edgeWeightedDigraphFrom(edgeClass);
+						to = accessors.edgeWeightedDigraphTo(edgeClass);
+					}
+				}
+				double wt = weight.invokeDouble(edge);
+				int v = undirected && vertex != -1 ? vertex : from.invokeInt(edge);
+				int w = undirected ? to.invokeInt(edge, v) : to.invokeInt(edge);
+
+				if(v == -1 || w == -1) {
+					throw new IllegalArgumentException();
+				}
+
+				action.accept(v, w, wt);
+			}
+		}
+	}
+}
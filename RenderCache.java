@@ -0,0 +1,406 @@
+package GraphViz;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of rendered images keyed by hash of dot source, file type and
+ * layout engine. Images are kept in memory and in cache directory, both
+ * bounded by size in bytes, least recently used images are evicted first.
+ * When same image is requested by more threads at once, only one of them
+ * renders it and others wait for its result.
+ */
+public class RenderCache {
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+	private static final String TEMP_SUFFIX = ".tmp";
+	//temp file older than this was left by process that stopped while writing
+	private static final long STALE_TEMP_MILLIS = TimeUnit.HOURS.toMillis(1);
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	private final File directory;
+	private final long maxMemoryBytes;
+	private final long maxDiskBytes;
+
+	//both maps are in access order, first entry is least recently used
+	private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+	private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+	private long memoryBytes;
+	private long diskBytes;
+
+	private final Map<String, CompletableFuture<byte[]>> rendering = new ConcurrentHashMap<>();
+
+	/**
+	 * Cache that keeps images only in memory.
+	 * @param maxMemoryBytes maximum size of images kept in memory
+	 */
+	public RenderCache(long maxMemoryBytes) {
+		this(null, maxMemoryBytes, 0);
+	}
+
+	/**
+	 * @param directory where images are stored, created if it does not exist, null for none
+	 * @param maxMemoryBytes maximum size of images kept in memory
+	 * @param maxDiskBytes maximum size of images kept in directory
+	 */
+	public RenderCache(File directory, long maxMemoryBytes, long maxDiskBytes) {
+		if(maxMemoryBytes < 0 || maxDiskBytes < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.directory = directory;
+		this.maxMemoryBytes = maxMemoryBytes;
+		this.maxDiskBytes = maxDiskBytes;
+		loadDirectory();
+	}
+
+	/**
+	 * Returns cached image for key, if image is not cached loader is used
+	 * to render it. If image for same key is being rendered by other thread
+	 * this method waits for that render instead of starting new one.
+	 * Image loader throws as UncachedImage is returned but not stored.
+	 * @param key created by key method
+	 * @param loader renders image when it is not cached
+	 * @return image bytes, shared with cache and should not be changed
+	 * @throws IOException if loader fails
+	 */
+	public byte[] get(String key, Loader loader) throws IOException {
+		byte[] image = lookup(key);
+		if(image != null) {
+			return image;
+		}
+
+		CompletableFuture<byte[]> own = new CompletableFuture<>();
+		CompletableFuture<byte[]> running = rendering.putIfAbsent(key, own);
+		if(running != null) {
+			return await(running);
+		}
+		try {
+			//other render could finish after lookup and before putIfAbsent
+			image = lookup(key);
+			if(image == null) {
+				image = loader.load();
+				store(key, image);
+			}
+			own.complete(image);
+			return image;
+		} catch (UncachedImage u) {
+			//renders waiting for same key get image, later lookups render again
+			own.complete(u.image);
+			return u.image;
+		} catch (IOException | RuntimeException e) {
+			own.completeExceptionally(e);
+			throw e;
+		} finally {
+			rendering.remove(key, own);
+		}
+	}
+
+	/**
+	 * Removes all images from memory and cache directory.
+	 */
+	public synchronized void clear() {
+		memory.clear();
+		memoryBytes = 0;
+		for(String key : disk.keySet()) {
+			new File(directory, key).delete();
+		}
+		disk.clear();
+		diskBytes = 0;
+	}
+
+	public synchronized long memoryBytes() {
+		return memoryBytes;
+	}
+
+	public synchronized long diskBytes() {
+		return diskBytes;
+	}
+
+	/**
+	 * Creates cache key from digest already updated with dot source.
+	 * @param dotDigest
+	 * @param fileType
+	 * @param engine
+	 * @return hex key
+	 */
+	static String key(MessageDigest dotDigest, String fileType, String engine) {
+		dotDigest.update((byte) 0);
+		dotDigest.update(fileType.getBytes(StandardCharsets.UTF_8));
+		dotDigest.update((byte) 0);
+		dotDigest.update(engine.getBytes(StandardCharsets.UTF_8));
+		byte[] hash = dotDigest.digest();
+		StringBuilder sb = new StringBuilder(hash.length * 2);
+		for(byte b : hash) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Creates cache keys of same dot for several file types.
+	 * @param dotDigest digest already updated with dot source, it is not changed
+	 * @param fileTypes
+	 * @param engine
+	 * @return hex keys by file type
+	 */
+	static Map<String, String> keys(MessageDigest dotDigest, Iterable<String> fileTypes, String engine) {
+		Map<String, String> keys = new LinkedHashMap<>();
+		for(String fileType : fileTypes) {
+			try {
+				keys.put(fileType, key((MessageDigest) dotDigest.clone(), fileType, engine));
+			} catch (CloneNotSupportedException e) {
+				//SHA-256 of every JVM can be cloned
+				throw new IllegalStateException(e);
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Hashes dot file.
+	 * @param dotFile
+	 * @return digest updated with dot
+	 * @throws IOException
+	 */
+	static MessageDigest digest(Path dotFile) throws IOException {
+		MessageDigest md = newDigest();
+		ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		try (FileChannel channel = FileChannel.open(dotFile)) {
+			while(channel.read(buffer) != -1) {
+				buffer.flip();
+				md.update(buffer);
+				buffer.clear();
+			}
+		}
+		return md;
+	}
+
+	/**
+	 * Hashes dot read from stream, stream is not closed.
+	 * @param dot
+	 * @return digest updated with dot
+	 * @throws IOException
+	 */
+	static MessageDigest digest(InputStream dot) throws IOException {
+		MessageDigest md = newDigest();
+		byte[] buffer = new byte[READ_BUFFER_SIZE];
+		int n;
+		while((n = dot.read(buffer)) != -1) {
+			md.update(buffer, 0, n);
+		}
+		return md;
+	}
+
+	static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			//every JVM is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private byte[] lookup(String key) {
+		synchronized (this) {
+			byte[] image = memory.get(key);
+			if(image != null) {
+				return image;
+			}
+			if(disk.get(key) == null) {
+				return null;
+			}
+		}
+
+		File file = new File(directory, key);
+		byte[] image;
+		try {
+			image = Files.readAllBytes(file.toPath());
+		} catch (IOException e) {
+			//file was removed from directory by someone else
+			synchronized (this) {
+				Long size = disk.remove(key);
+				if(size != null) {
+					diskBytes -= size;
+				}
+			}
+			return null;
+		}
+		file.setLastModified(System.currentTimeMillis());
+		synchronized (this) {
+			putInMemory(key, image);
+		}
+		return image;
+	}
+
+	/**
+	 * Keeps image in memory and on disk. Image that can't be written to
+	 * disk is only kept in memory, rendered image is never lost.
+	 * @param key
+	 * @param image
+	 */
+	private void store(String key, byte[] image) {
+		synchronized (this) {
+			putInMemory(key, image);
+		}
+		if(directory == null || image.length > maxDiskBytes) {
+			return;
+		}
+
+		directory.mkdirs();
+		Path target = new File(directory, key).toPath();
+		Path temp = null;
+		try {
+			//unique name, so processes sharing directory do not write same temp file
+			temp = Files.createTempFile(directory.toPath(), key, TEMP_SUFFIX);
+			Files.write(temp, image);
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			System.err.println("Warning: image could not be stored in render cache "+directory+": "+e);
+			if(temp != null) {
+				temp.toFile().delete();
+			}
+			return;
+		}
+
+		synchronized (this) {
+			Long old = disk.put(key, (long) image.length);
+			diskBytes += image.length - (old != null ? old : 0);
+			trimDisk();
+		}
+	}
+
+	private void trimDisk() {
+		Iterator<Map.Entry<String, Long>> it = disk.entrySet().iterator();
+		while(diskBytes > maxDiskBytes && it.hasNext()) {
+			Map.Entry<String, Long> eldest = it.next();
+			new File(directory, eldest.getKey()).delete();
+			diskBytes -= eldest.getValue();
+			it.remove();
+		}
+	}
+
+	private void putInMemory(String key, byte[] image) {
+		if(image.length > maxMemoryBytes) {
+			return;
+		}
+		byte[] old = memory.put(key, image);
+		memoryBytes += image.length - (old != null ? old.length : 0);
+		Iterator<byte[]> it = memory.values().iterator();
+		while(memoryBytes > maxMemoryBytes && it.hasNext()) {
+			memoryBytes -= it.next().length;
+			it.remove();
+		}
+	}
+
+	/**
+	 * Reads images already in cache directory, last modification time is
+	 * used as time of last access. Stale temp files are deleted, newer
+	 * ones may still be written by other process.
+	 */
+	private void loadDirectory() {
+		if(directory == null) {
+			return;
+		}
+		File[] files = directory.listFiles();
+		if(files == null) {
+			return;
+		}
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		long staleBefore = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+		for(File f : files) {
+			if(f.getName().endsWith(TEMP_SUFFIX)) {
+				if(f.lastModified() < staleBefore) {
+					f.delete();
+				}
+			} else if(f.isFile()) {
+				disk.put(f.getName(), f.length());
+				diskBytes += f.length();
+			}
+		}
+		trimDisk();
+	}
+
+	private static byte[] await(CompletableFuture<byte[]> running) throws IOException {
+		try {
+			return running.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new UncheckedIOException(new IOException(cause));
+		}
+	}
+
+	/**
+	 * Thrown by loader with image that should not be stored under its key,
+	 * such as image drawn from sample of edges after render timeout.
+	 */
+	static final class UncachedImage extends IOException {
+		private static final long serialVersionUID = 1L;
+		private final transient byte[] image;
+
+		UncachedImage(byte[] image) {
+			super("image is not cached");
+			this.image = image;
+		}
+	}
+
+	/**
+	 * Renders image that is not in cache.
+	 */
+	@FunctionalInterface
+	public interface Loader {
+		byte[] load() throws IOException;
+	}
+
+	/**
+	 * Channel that only updates digest with bytes written to it.
+	 */
+	static final class DigestChannel implements WritableByteChannel {
+		private final MessageDigest digest;
+
+		DigestChannel(MessageDigest digest) {
+			this.digest = digest;
+		}
+
+		@Override
+		public int write(ByteBuffer src) {
+			int n = src.remaining();
+			digest.update(src);
+			return n;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
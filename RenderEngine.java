@@ -0,0 +1,18 @@
+package GraphViz;
+
+/**
+ * What draws graph images.
+ */
+public enum RenderEngine {
+	/**
+	 * GraphViz executable, which is started for every image. When it
+	 * can't be started image is drawn by JAVA instead.
+	 */
+	GRAPHVIZ,
+	/**
+	 * Force directed layout drawn in process, no external program is
+	 * needed. Layout is simpler than layouts of GraphViz, but it is fast
+	 * for graphs with up to about 100000 vertices.
+	 */
+	JAVA
+}
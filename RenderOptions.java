@@ -0,0 +1,122 @@
+package GraphViz;
+
+/**
+ * Settings of one render that override config of GraphViz, so threads
+ * sharing one GraphViz can ask for different images without changing it.
+ * Settings that are not set are taken from config.
+ * <pre>
+ * graphViz.renderToBytes(graph, RenderOptions.builder().fileType("svg").build());
+ * </pre>
+ */
+public final class RenderOptions {
+	private final String fileType;
+	private final LayoutEngine layoutEngine;
+	private final Long renderTimeoutMillis;
+	private final RenderEngine renderEngine;
+
+	private RenderOptions(Builder b) {
+		fileType = b.fileType;
+		layoutEngine = b.layoutEngine;
+		renderTimeoutMillis = b.renderTimeoutMillis;
+		renderEngine = b.renderEngine;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return type of image, null to use type of config
+	 */
+	public String fileType() {
+		return fileType;
+	}
+
+	/**
+	 * @return layout engine, null to use engine of config
+	 */
+	public LayoutEngine layoutEngine() {
+		return layoutEngine;
+	}
+
+	/**
+	 * @return render timeout in milliseconds, null to use timeout of config
+	 */
+	public Long renderTimeoutMillis() {
+		return renderTimeoutMillis;
+	}
+
+	/**
+	 * @return render engine, null to use render engine of config
+	 */
+	public RenderEngine renderEngine() {
+		return renderEngine;
+	}
+
+	/**
+	 * @param config
+	 * @return config with settings of these options
+	 */
+	GraphVizConfig applyTo(GraphVizConfig config) {
+		GraphVizConfig.Builder b = config.toBuilder();
+		if(fileType != null) {
+			b.fileType(fileType);
+		}
+		if(layoutEngine != null) {
+			b.layoutEngine(layoutEngine);
+		}
+		if(renderTimeoutMillis != null) {
+			b.renderTimeout(renderTimeoutMillis);
+		}
+		if(renderEngine != null) {
+			b.renderEngine(renderEngine);
+		}
+		return b.build();
+	}
+
+	public static final class Builder {
+		private String fileType;
+		private LayoutEngine layoutEngine;
+		private Long renderTimeoutMillis;
+		private RenderEngine renderEngine;
+
+		private Builder() {
+		}
+
+		/**
+		 * @param fileType gif, png, jpg or svg
+		 * @return this builder
+		 */
+		public Builder fileType(String fileType) {
+			GraphVizConfig.checkFileType(fileType);
+			this.fileType = fileType;
+			return this;
+		}
+
+		public Builder layoutEngine(LayoutEngine engine) {
+			layoutEngine = engine;
+			return this;
+		}
+
+		/**
+		 * @param millis 0 for no timeout
+		 * @return this builder
+		 */
+		public Builder renderTimeout(long millis) {
+			if(millis < 0) {
+				throw new IllegalArgumentException();
+			}
+			renderTimeoutMillis = millis;
+			return this;
+		}
+
+		public Builder renderEngine(RenderEngine engine) {
+			renderEngine = engine;
+			return this;
+		}
+
+		public RenderOptions build() {
+			return new RenderOptions(this);
+		}
+	}
+}
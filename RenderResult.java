@@ -0,0 +1,108 @@
+package GraphViz;
+
+/**
+ * Outcome of rendering one image: exit code of dot and beginning of what
+ * dot wrote to its standard error, which explains why render failed and
+ * holds warnings when it succeeded.
+ */
+public final class RenderResult {
+	/** exit code when dot was not run or could not be started */
+	public static final int NOT_RUN = -1;
+
+	private final String imageFile;
+	private final int exitCode;
+	private final boolean timedOut;
+	private final String errors;
+	private final boolean partial;
+
+	RenderResult(String imageFile, int exitCode, boolean timedOut, String errors) {
+		this(imageFile, exitCode, timedOut, errors, false);
+	}
+
+	private RenderResult(String imageFile, int exitCode, boolean timedOut, String errors, boolean partial) {
+		this.imageFile = imageFile;
+		this.exitCode = exitCode;
+		this.timedOut = timedOut;
+		this.errors = errors != null ? errors : "";
+		this.partial = partial;
+	}
+
+	static RenderResult failed(String imageFile, String error) {
+		return new RenderResult(imageFile, NOT_RUN, false, error);
+	}
+
+	/**
+	 * @return true if image was created
+	 */
+	public boolean isSuccess() {
+		return exitCode == 0 && !timedOut;
+	}
+
+	/**
+	 * @return location of image, null when image was not written to file
+	 */
+	public String imageFile() {
+		return imageFile;
+	}
+
+	/**
+	 * @return exit code of last dot run, NOT_RUN if dot did not run
+	 */
+	public int exitCode() {
+		return exitCode;
+	}
+
+	/**
+	 * @return true if dot was killed because it did not finish before render timeout
+	 */
+	public boolean timedOut() {
+		return timedOut;
+	}
+
+	/**
+	 * @return standard error of dot, cut to first few kilobytes
+	 */
+	public String errors() {
+		return errors;
+	}
+
+	/**
+	 * @return true if image was drawn from sample of edges because layout
+	 * of whole graph did not finish before render timeout
+	 */
+	public boolean isPartial() {
+		return partial;
+	}
+
+	RenderResult withImageFile(String imageFile) {
+		return new RenderResult(imageFile, exitCode, timedOut, errors, partial);
+	}
+
+	/**
+	 * @return same result marked as drawn from sample of edges
+	 */
+	RenderResult asPartial() {
+		return new RenderResult(imageFile, exitCode, timedOut, errors, true);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		if(isSuccess()) {
+			sb.append("created ").append(imageFile);
+			if(partial) {
+				sb.append(" from sample of edges");
+			}
+		} else if(timedOut) {
+			sb.append("timed out");
+		} else if(exitCode == NOT_RUN) {
+			sb.append("not run");
+		} else {
+			sb.append("exit code ").append(exitCode);
+		}
+		if(!errors.isEmpty()) {
+			sb.append(": ").append(errors.strip());
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,90 @@
+package GraphViz;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Map from objects to values kept while objects are reachable, keys are
+ * compared by identity. Graphs change their equals and hashCode when they
+ * are changed, so WeakHashMap would lose them. All methods are synchronized.
+ * @param <K> key
+ * @param <V> value
+ */
+final class WeakIdentityMap<K, V> {
+	private final Map<Key, V> map = new HashMap<>();
+	private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+	synchronized V get(K key) {
+		expunge();
+		return map.get(new Key(key, null));
+	}
+
+	synchronized V put(K key, V value) {
+		expunge();
+		return map.put(new Key(key, collected), value);
+	}
+
+	synchronized V remove(K key) {
+		expunge();
+		return map.remove(new Key(key, null));
+	}
+
+	/**
+	 * Puts value, or value combined with value already kept for key.
+	 * @param key
+	 * @param value
+	 * @param combine called with kept value and value
+	 * @return value kept for key
+	 */
+	synchronized V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> combine) {
+		expunge();
+		Key k = new Key(key, null);
+		V old = map.get(k);
+		V merged = old != null ? combine.apply(old, value) : value;
+		map.put(old != null ? k : new Key(key, collected), merged);
+		return merged;
+	}
+
+	synchronized void clear() {
+		map.clear();
+		expunge();
+	}
+
+	/**
+	 * Removes entries of collected keys.
+	 */
+	private void expunge() {
+		for(Object k = collected.poll(); k != null; k = collected.poll()) {
+			map.remove(k);
+		}
+	}
+
+	private static final class Key extends WeakReference<Object> {
+		private final int hash;
+
+		Key(Object referent, ReferenceQueue<Object> queue) {
+			super(referent, queue);
+			this.hash = System.identityHashCode(referent);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(this == o) {
+				return true;
+			}
+			if(!(o instanceof Key)) {
+				return false;
+			}
+			Object referent = get();
+			return referent != null && referent == ((Key) o).get();
+		}
+	}
+}
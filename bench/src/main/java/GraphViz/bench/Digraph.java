@@ -0,0 +1,23 @@
+package GraphViz.bench;
+
+import java.util.List;
+
+/**
+ * Stands in for Digraph from Data Structures and Algorithms 3 course,
+ * adjacent vertices are kept boxed, same as in Bag used on course.
+ */
+public class Digraph {
+	private final List<Integer>[] adj;
+
+	Digraph(List<Integer>[] adj) {
+		this.adj = adj;
+	}
+
+	public int V() {
+		return adj.length;
+	}
+
+	public Iterable<Integer> adj(int v) {
+		return adj[v];
+	}
+}
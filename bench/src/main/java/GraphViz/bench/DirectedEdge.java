@@ -0,0 +1,28 @@
+package GraphViz.bench;
+
+/**
+ * Stands in for DirectedEdge of EdgeWeightedDigraph.
+ */
+public class DirectedEdge {
+	private final int v;
+	private final int w;
+	private final double weight;
+
+	DirectedEdge(int v, int w, double weight) {
+		this.v = v;
+		this.w = w;
+		this.weight = weight;
+	}
+
+	public int from() {
+		return v;
+	}
+
+	public int to() {
+		return w;
+	}
+
+	public double weight() {
+		return weight;
+	}
+}
@@ -0,0 +1,75 @@
+package GraphViz.bench;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import GraphViz.GraphViz;
+import GraphViz.GraphVizListener;
+
+/**
+ * Cost of writing dot files, of whole createGraphImage pipeline with dot
+ * stub in place of GraphViz and of allocating graph dot ids.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class DotFileBenchmark {
+
+	@Param({"1000", "100000"})
+	public int edges;
+
+	@Param({"DIGRAPH", "EDGE_WEIGHTED_DIGRAPH"})
+	public SyntheticGraphs.Kind kind;
+
+	private GraphViz graphViz;
+	private Object graph;
+	private Path dotFile;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Path root = Files.createTempDirectory("graphviz-bench");
+		graphViz = new GraphViz(DotStub.install(root).toString(), root.toString());
+		graphViz.setListener(GraphVizListener.NONE);
+		graph = SyntheticGraphs.create(kind, SyntheticGraphs.Shape.SPARSE, edges, 42);
+		dotFile = root.resolve("bench.dot");
+	}
+
+	@Benchmark
+	public long writeDotFile() throws IOException {
+		try (FileChannel channel = FileChannel.open(dotFile, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			graphViz.toDot(graph, channel);
+			return channel.position();
+		}
+	}
+
+	@Benchmark
+	public void createGraphImage() {
+		graphViz.createGraphImage("bench_graph", graph);
+	}
+
+	@Benchmark
+	public int updateDotId() {
+		return graphViz.updateDotId();
+	}
+}
@@ -0,0 +1,92 @@
+package GraphViz.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import GraphViz.GraphViz;
+
+/**
+ * Throughput of dot serialization, into String and streamed into channel
+ * that drops bytes. Run with -prof gc to see allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class DotSerializationBenchmark {
+
+	@Param({"1000", "100000", "10000000"})
+	public int edges;
+
+	@Param({"GRAPH", "DIGRAPH", "EDGE_WEIGHTED_GRAPH", "EDGE_WEIGHTED_DIGRAPH"})
+	public SyntheticGraphs.Kind kind;
+
+	@Param({"SPARSE", "DENSE", "POWER_LAW"})
+	public SyntheticGraphs.Shape shape;
+
+	private GraphViz graphViz;
+	private Object graph;
+	private final CountingChannel sink = new CountingChannel();
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Path root = Files.createTempDirectory("graphviz-bench");
+		graphViz = new GraphViz(DotStub.install(root).toString(), root.toString());
+		graph = SyntheticGraphs.create(kind, shape, edges, 42);
+	}
+
+	@Benchmark
+	public String toDotString() {
+		return graphViz.toDot(graph);
+	}
+
+	@Benchmark
+	public long toDotChannel() throws IOException {
+		sink.bytes = 0;
+		graphViz.toDot(graph, sink);
+		return sink.bytes;
+	}
+
+	/**
+	 * Counts bytes written to it and drops them.
+	 */
+	static final class CountingChannel implements WritableByteChannel {
+		long bytes;
+
+		@Override
+		public int write(ByteBuffer src) {
+			int n = src.remaining();
+			src.position(src.limit());
+			bytes += n;
+			return n;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package GraphViz.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * Shell script that stands in for GraphViz dot, so benchmarks run where
+ * GraphViz is not installed and measure only cost on Java side and of
+ * starting process. Script copies dot source to image file or standard
+ * output without doing any layout.
+ */
+final class DotStub {
+	private static final String SCRIPT = "#!/bin/sh\n"
+			+ "out=\n"
+			+ "in=\n"
+			+ "while [ $# -gt 0 ]; do\n"
+			+ "  case \"$1\" in\n"
+			+ "    -V) echo \"dot - graphviz version 0.0 (stub)\" >&2; exit 0 ;;\n"
+			+ "    -o) out=\"$2\"; shift 2 ;;\n"
+			+ "    -o*) out=\"${1#-o}\"; shift ;;\n"
+			+ "    -T|-K) shift 2 ;;\n"
+			+ "    -*) shift ;;\n"
+			+ "    *) in=\"$1\"; shift ;;\n"
+			+ "  esac\n"
+			+ "done\n"
+			+ "if [ -n \"$in\" ]; then exec < \"$in\"; fi\n"
+			+ "if [ -n \"$out\" ]; then exec > \"$out\"; fi\n"
+			+ "exec cat\n";
+
+	private DotStub() {
+	}
+
+	/**
+	 * Writes executable stub to directory.
+	 * @param dir
+	 * @return path of stub
+	 * @throws IOException
+	 */
+	static Path install(Path dir) throws IOException {
+		Path stub = dir.resolve("dot-stub");
+		Files.write(stub, SCRIPT.getBytes(StandardCharsets.US_ASCII));
+		Files.setPosixFilePermissions(stub, PosixFilePermissions.fromString("rwxr-xr-x"));
+		return stub;
+	}
+}
@@ -0,0 +1,28 @@
+package GraphViz.bench;
+
+/**
+ * Stands in for Edge of EdgeWeightedGraph.
+ */
+public class Edge {
+	private final int v;
+	private final int w;
+	private final double weight;
+
+	Edge(int v, int w, double weight) {
+		this.v = v;
+		this.w = w;
+		this.weight = weight;
+	}
+
+	public int either() {
+		return v;
+	}
+
+	public int other(int vertex) {
+		return vertex == v ? w : v;
+	}
+
+	public double weight() {
+		return weight;
+	}
+}
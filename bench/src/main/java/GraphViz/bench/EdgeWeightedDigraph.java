@@ -0,0 +1,24 @@
+package GraphViz.bench;
+
+import java.util.List;
+
+/**
+ * Stands in for EdgeWeightedDigraph from Data Structures and Algorithms 3 course.
+ */
+public class EdgeWeightedDigraph {
+	private final int vertices;
+	private final List<DirectedEdge> edges;
+
+	EdgeWeightedDigraph(int vertices, List<DirectedEdge> edges) {
+		this.vertices = vertices;
+		this.edges = edges;
+	}
+
+	public int V() {
+		return vertices;
+	}
+
+	public Iterable<DirectedEdge> edges() {
+		return edges;
+	}
+}
@@ -0,0 +1,24 @@
+package GraphViz.bench;
+
+import java.util.List;
+
+/**
+ * Stands in for EdgeWeightedGraph from Data Structures and Algorithms 3 course.
+ */
+public class EdgeWeightedGraph {
+	private final int vertices;
+	private final List<Edge> edges;
+
+	EdgeWeightedGraph(int vertices, List<Edge> edges) {
+		this.vertices = vertices;
+		this.edges = edges;
+	}
+
+	public int V() {
+		return vertices;
+	}
+
+	public Iterable<Edge> edges() {
+		return edges;
+	}
+}
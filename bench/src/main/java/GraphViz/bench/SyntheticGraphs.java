@@ -0,0 +1,139 @@
+package GraphViz.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Generates graphs used by benchmarks, same seed gives same graph.
+ */
+public final class SyntheticGraphs {
+
+	public enum Kind {
+		GRAPH, DIGRAPH, EDGE_WEIGHTED_GRAPH, EDGE_WEIGHTED_DIGRAPH
+	}
+
+	public enum Shape {
+		/** about 4 edges per vertex, uniformly random endpoints */
+		SPARSE,
+		/** about sqrt(2 * edges) vertices, uniformly random endpoints */
+		DENSE,
+		/** preferential attachment, 4 edges per new vertex */
+		POWER_LAW
+	}
+
+	private static final int EDGES_PER_VERTEX = 4;
+
+	private SyntheticGraphs() {
+	}
+
+	public static Object create(Kind kind, Shape shape, int edges, long seed) {
+		int vertices = vertices(shape, edges);
+		int[] from = new int[edges];
+		int[] to = new int[edges];
+		SplittableRandom random = new SplittableRandom(seed);
+		if(shape == Shape.POWER_LAW) {
+			preferentialAttachment(vertices, from, to, random);
+		} else {
+			for(int i = 0; i < edges; i++) {
+				from[i] = random.nextInt(vertices);
+				to[i] = random.nextInt(vertices);
+			}
+		}
+
+		switch (kind) {
+		case GRAPH:
+			return new Graph(adjacency(vertices, from, to, true));
+		case DIGRAPH:
+			return new Digraph(adjacency(vertices, from, to, false));
+		case EDGE_WEIGHTED_GRAPH: {
+			List<Edge> list = new ArrayList<>(edges);
+			for(int i = 0; i < edges; i++) {
+				list.add(new Edge(from[i], to[i], weight(random)));
+			}
+			return new EdgeWeightedGraph(vertices, list);
+		}
+		default: {
+			List<DirectedEdge> list = new ArrayList<>(edges);
+			for(int i = 0; i < edges; i++) {
+				list.add(new DirectedEdge(from[i], to[i], weight(random)));
+			}
+			return new EdgeWeightedDigraph(vertices, list);
+		}
+		}
+	}
+
+	static int vertices(Shape shape, int edges) {
+		if(shape == Shape.DENSE) {
+			return Math.max(2, (int) Math.sqrt(2.0 * edges));
+		}
+		return Math.max(EDGES_PER_VERTEX + 1, edges / EDGES_PER_VERTEX);
+	}
+
+	/**
+	 * Each new vertex is linked to vertices chosen with probability
+	 * proportional to their degree, endpoints of all edges so far are
+	 * kept in one array and chosen uniformly.
+	 */
+	private static void preferentialAttachment(int vertices, int[] from, int[] to, SplittableRandom random) {
+		int edges = from.length;
+		int[] endpoints = new int[2 * edges];
+		int size = 0;
+		int e = 0;
+		//small complete graph to start from
+		int start = EDGES_PER_VERTEX + 1;
+		for(int v = 0; v < start && e < edges; v++) {
+			for(int w = v + 1; w < start && e < edges; w++) {
+				from[e] = v;
+				to[e++] = w;
+				endpoints[size++] = v;
+				endpoints[size++] = w;
+			}
+		}
+		for(int v = start; e < edges; v = v + 1 < vertices ? v + 1 : start) {
+			for(int k = 0; k < EDGES_PER_VERTEX && e < edges; k++) {
+				int w = endpoints[random.nextInt(size)];
+				from[e] = v;
+				to[e++] = w;
+				endpoints[size++] = v;
+				endpoints[size++] = w;
+			}
+		}
+	}
+
+	/**
+	 * Adjacency lists of boxed vertices, undirected edges are added
+	 * to both of their vertices.
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<Integer>[] adjacency(int vertices, int[] from, int[] to, boolean undirected) {
+		int[] degree = new int[vertices];
+		for(int i = 0; i < from.length; i++) {
+			degree[from[i]]++;
+			if(undirected) {
+				degree[to[i]]++;
+			}
+		}
+		Integer[][] adj = new Integer[vertices][];
+		for(int v = 0; v < vertices; v++) {
+			adj[v] = new Integer[degree[v]];
+		}
+		Arrays.fill(degree, 0);
+		for(int i = 0; i < from.length; i++) {
+			adj[from[i]][degree[from[i]]++] = to[i];
+			if(undirected) {
+				adj[to[i]][degree[to[i]]++] = from[i];
+			}
+		}
+		List<Integer>[] lists = new List[vertices];
+		for(int v = 0; v < vertices; v++) {
+			lists[v] = Arrays.asList(adj[v]);
+		}
+		return lists;
+	}
+
+	private static double weight(SplittableRandom random) {
+		return Math.round(random.nextDouble() * 10000) / 100.0;
+	}
+}